@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks the same way every time so runs on a CI box can be compared.
+ * The key and memory cache benchmarks run with 1, 2, 4 and 8 threads. Every run has 
+ * the GC profiler on, which reports the bytes allocated per operation. The results
+ * are written as JSON to target/jmh-&lt;threads&gt;.json.
+ * 
+ * Passing any arguments hands them to the JMH command line instead, such as 
+ * "-h" for its options or a benchmark name to run only that one.
+ */
+public class BenchmarkMain {
+	
+	private static final int[] THREADS = {1, 2, 4, 8};
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		new File("target").mkdirs();
+		for (int threads : THREADS) {
+			String include = threads == 1 ? ".*Benchmark\\..*" : "(Key|MemoryCache)Benchmark\\..*";
+			new Runner(options(include, threads).build()).run();
+		}
+	}
+	
+	private static ChainedOptionsBuilder options(String include, int threads) {
+		return new OptionsBuilder()
+				.include(BenchmarkMain.class.getPackage().getName() + "." + include)
+				.threads(threads)
+				.forks(2)
+				.warmupIterations(5)
+				.warmupTime(TimeValue.seconds(1))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(1))
+				// the same heap every run, so the GC doesn't change between machines
+				.jvmArgs("-Xms512m", "-Xmx512m")
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-" + threads + ".json");
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.therealjoshua.essentials.bitmaploader.cache.DiskLruCache;
+import com.therealjoshua.essentials.bitmaploader.cache.KeyHasher;
+
+/**
+ * The costs of the DiskLruCache which grow with the number of entries. Every cache lives 
+ * in a temp directory which is deleted afterwards.
+ * 
+ * The open and journal rebuild benchmarks write a journal of CLEAN lines without any 
+ * files behind them. Opening only reads the journal, so this measures the same work as
+ * a real cache of that many entries without having to write 500k files first.
+ */
+public class DiskLruCacheBenchmark {
+	
+	private static final int VALUE_SIZE = 4 * 1024;
+	
+	/*
+	 * Writes the journal of a cache holding the entries
+	 */
+	static void writeJournal(File directory, int entries) throws IOException {
+		directory.mkdirs();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(directory, "journal")), "US-ASCII"));
+		try {
+			writer.write("libcore.io.DiskLruCache\n1\n1\n1\n\n");
+			for (int i = 0; i < entries; i++) {
+				writer.write("CLEAN ");
+				writer.write(key(i));
+				writer.write(" 4096\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	static String key(int i) {
+		return KeyHasher.toString(KeyHasher.finish(KeyHasher.hash(KeyHasher.START, i)));
+	}
+	
+	static File tempDirectory(String name) throws IOException {
+		File directory = File.createTempFile(name, "");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+	
+	static void write(DiskLruCache cache, String key, byte[] value) throws IOException {
+		DiskLruCache.Editor editor = cache.edit(key);
+		if (editor == null) return; // another thread is writing it
+		OutputStream out = editor.newOutputStream(0);
+		try {
+			out.write(value);
+		} finally {
+			out.close();
+		}
+		editor.commit();
+	}
+	
+	static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) deleteRecursively(child);
+		}
+		file.delete();
+	}
+	
+	/**
+	 * Opening a cache, which reads the whole journal into memory
+	 */
+	@State(Scope.Benchmark)
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public static class Open {
+		@Param({"10000", "100000", "500000"})
+		public int entries;
+		
+		private File directory;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			directory = tempDirectory("open");
+			writeJournal(directory, entries);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			deleteRecursively(directory);
+		}
+		
+		@Benchmark
+		public long open() throws IOException {
+			DiskLruCache cache = DiskLruCache.open(directory, 1, 1, Long.MAX_VALUE);
+			long size = cache.size();
+			cache.close();
+			return size;
+		}
+	}
+	
+	/**
+	 * Rewriting the journal, which the cleanup thread does while holding the cache's lock 
+	 * once enough redundant lines pile up. Every get and edit waits for the whole time.
+	 */
+	@State(Scope.Benchmark)
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public static class RebuildJournal {
+		@Param({"10000", "100000", "500000"})
+		public int entries;
+		
+		private File directory;
+		private DiskLruCache cache;
+		private Method rebuildJournal;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			directory = tempDirectory("rebuild");
+			writeJournal(directory, entries);
+			cache = DiskLruCache.open(directory, 1, 1, Long.MAX_VALUE);
+			rebuildJournal = DiskLruCache.class.getDeclaredMethod("rebuildJournal");
+			rebuildJournal.setAccessible(true);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			cache.close();
+			deleteRecursively(directory);
+		}
+		
+		@Benchmark
+		public void rebuild() throws Exception {
+			rebuildJournal.invoke(cache);
+		}
+	}
+	
+	/**
+	 * Gets and edits from many threads at once on a cache of 1000 entries. Every method of 
+	 * the cache takes the same lock and each commit flushes the journal.
+	 */
+	@State(Scope.Group)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public static class Concurrent {
+		private static final int ENTRIES = 1000;
+		
+		private File directory;
+		private DiskLruCache cache;
+		private byte[] value;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			directory = tempDirectory("concurrent");
+			cache = DiskLruCache.open(directory, 1, 1, Long.MAX_VALUE);
+			value = new byte[VALUE_SIZE];
+			for (int i = 0; i < ENTRIES; i++) write(cache, key(i), value);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			cache.delete();
+		}
+		
+		@Benchmark
+		@Group("mixed")
+		@GroupThreads(3)
+		public boolean get(Cursor cursor) throws IOException {
+			DiskLruCache.Snapshot snapshot = cache.get(key(cursor.next(ENTRIES)));
+			if (snapshot == null) return false;
+			snapshot.close();
+			return true;
+		}
+		
+		@Benchmark
+		@Group("mixed")
+		@GroupThreads(1)
+		public void edit(Cursor cursor) throws IOException {
+			write(cache, key(cursor.next(ENTRIES)), value);
+		}
+	}
+	
+	/**
+	 * Adding entries to a cache which is under its size cap against one which is full, 
+	 * where every entry added evicts the oldest. Eviction normally runs on the cache's 
+	 * cleanup thread, so the flush runs it on the calling thread to count it.
+	 */
+	@State(Scope.Benchmark)
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public static class Eviction {
+		private static final int ENTRIES = 1000;
+		
+		@Param({"false", "true"})
+		public boolean full;
+		
+		private File directory;
+		private DiskLruCache cache;
+		private byte[] value;
+		private int next;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			directory = tempDirectory("eviction");
+			long maxSize = full ? (long)ENTRIES * VALUE_SIZE : Long.MAX_VALUE;
+			cache = DiskLruCache.open(directory, 1, 1, maxSize);
+			value = new byte[VALUE_SIZE];
+			for (next = 0; next < ENTRIES; next++) write(cache, key(next), value);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			cache.delete();
+		}
+		
+		@Benchmark
+		public void add() throws IOException {
+			write(cache, key(next++), value);
+			cache.flush();
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next = (int)(Thread.currentThread().getId() * 7919);
+		
+		int next(int count) {
+			next = (next + 1) & 0x7fffffff;
+			return next % count;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.therealjoshua.essentials.bitmaploader.cache.DiskLruCache;
+
+/**
+ * Hammers a DiskLruCache from many threads for a fixed time and reports the throughput, 
+ * the latency percentiles and the longest stall. The long stalls are the journal rebuilds 
+ * and evictions, which hold the cache's lock while every other thread waits.
+ * 
+ * Each value holds its key's number and a version, so a reader which gets back another 
+ * key's bytes or a torn write counts as a corruption. The run fails if there are any.
+ * 
+ * Usage: java -cp benchmarks.jar ...DiskLruCacheStress [threads] [seconds] [keys] [writePercent] [maxSizeMb]
+ */
+public class DiskLruCacheStress {
+	
+	private static final int VALUE_SIZE = 4 * 1024;
+	private static final int BUCKETS = 40;
+	
+	private final DiskLruCache cache;
+	private final int keys;
+	private final int writePercent;
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong corruptions = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+	private volatile boolean running = true;
+	
+	public DiskLruCacheStress(DiskLruCache cache, int keys, int writePercent) {
+		this.cache = cache;
+		this.keys = keys;
+		this.writePercent = writePercent;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		int keys = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		long maxSize = args.length > 4 ? Long.parseLong(args[4]) * 1024 * 1024 : 32L * 1024 * 1024;
+		
+		File directory = DiskLruCacheBenchmark.tempDirectory("stress");
+		DiskLruCache cache = DiskLruCache.open(directory, 1, 1, maxSize);
+		System.out.println("threads=" + threads + " seconds=" + seconds + " keys=" + keys 
+				+ " writes=" + writePercent + "% maxSize=" + maxSize + " dir=" + directory);
+		try {
+			DiskLruCacheStress stress = new DiskLruCacheStress(cache, keys, writePercent);
+			stress.run(threads, seconds);
+			stress.report(seconds);
+			if (stress.corruptions.get() > 0) System.exit(1);
+		} finally {
+			cache.delete();
+		}
+	}
+	
+	public void run(int threads, int seconds) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final long seed = i;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						work(new Random(seed));
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "stress #" + i);
+			thread.start();
+		}
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		running = false;
+		done.await();
+	}
+	
+	private void work(Random random) throws IOException {
+		byte[] buffer = new byte[VALUE_SIZE];
+		while (running) {
+			int key = random.nextInt(keys);
+			long start = System.nanoTime();
+			if (random.nextInt(100) < writePercent) {
+				write(key, random.nextInt(), buffer);
+				writes.incrementAndGet();
+			} else {
+				read(key, buffer);
+				reads.incrementAndGet();
+			}
+			record(System.nanoTime() - start);
+		}
+	}
+	
+	private void write(int key, int version, byte[] buffer) throws IOException {
+		DiskLruCache.Editor editor = cache.edit(DiskLruCacheBenchmark.key(key));
+		if (editor == null) return; // another thread is writing it
+		fill(buffer, key, version);
+		try {
+			OutputStream out = editor.newOutputStream(0);
+			try {
+				out.write(buffer);
+			} finally {
+				out.close();
+			}
+			editor.commit();
+		} finally {
+			editor.abortUnlessCommitted();
+		}
+	}
+	
+	private void read(int key, byte[] buffer) throws IOException {
+		DiskLruCache.Snapshot snapshot = cache.get(DiskLruCacheBenchmark.key(key));
+		if (snapshot == null) return;
+		try {
+			hits.incrementAndGet();
+			InputStream in = snapshot.getInputStream(0);
+			new DataInputStream(in).readFully(buffer);
+			if (in.read() != -1 || !verify(buffer, key)) corruptions.incrementAndGet();
+		} catch (IOException e) {
+			corruptions.incrementAndGet();
+		} finally {
+			snapshot.close();
+		}
+	}
+	
+	/*
+	 * The key and version at the start and again at the end, so a value 
+	 * which is partly one write and partly another doesn't match
+	 */
+	private static void fill(byte[] buffer, int key, int version) {
+		ByteBuffer b = ByteBuffer.wrap(buffer);
+		b.putInt(0, key).putInt(4, version);
+		b.putInt(buffer.length - 8, key).putInt(buffer.length - 4, version);
+	}
+	
+	private static boolean verify(byte[] buffer, int key) {
+		ByteBuffer b = ByteBuffer.wrap(buffer);
+		return b.getInt(0) == key && b.getInt(buffer.length - 8) == key 
+				&& b.getInt(4) == b.getInt(buffer.length - 4);
+	}
+	
+	private void record(long nanos) {
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+		latencies.incrementAndGet(bucket);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {}
+	}
+	
+	/*
+	 * The upper bound in microseconds of the bucket holding the percentile
+	 */
+	private long percentile(double p) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += latencies.get(i);
+		long target = (long)Math.ceil(total * p);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += latencies.get(i);
+			if (seen >= target) return 1L << i;
+		}
+		return 1L << (BUCKETS - 1);
+	}
+	
+	public void report(int seconds) {
+		long ops = reads.get() + writes.get();
+		System.out.println("ops/s=" + ops / Math.max(1, seconds) + " reads=" + reads.get() 
+				+ " hits=" + hits.get() + " writes=" + writes.get() + " size=" + cache.size());
+		System.out.println("latency us <= p50=" + percentile(0.5) + " p99=" + percentile(0.99) 
+				+ " p99.9=" + percentile(0.999) + " p99.99=" + percentile(0.9999) 
+				+ " max=" + TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+		System.out.println("corruptions=" + corruptions.get());
+	}
+}
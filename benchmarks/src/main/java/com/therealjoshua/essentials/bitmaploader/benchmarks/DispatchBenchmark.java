@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.therealjoshua.essentials.bitmaploader.core.PriorityQueueExecutor;
+
+/**
+ * The cost of handing a stage of a load to another thread. Each stage of a BitmapLoader 
+ * load is queued on a PriorityExecutor, which is a {@link PriorityQueueExecutor} with the 
+ * Android thread priorities, so this measures the queue the loader really uses. A plain 
+ * fixed pool from the JDK is the baseline for what the priority ordering costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatchBenchmark {
+	
+	private PriorityQueueExecutor priorityExecutor;
+	private ExecutorService fifoExecutor;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		priorityExecutor = new PriorityQueueExecutor(2, "dispatch");
+		fifoExecutor = Executors.newFixedThreadPool(2);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		priorityExecutor.shutdown();
+		fifoExecutor.shutdownNow();
+	}
+	
+	@Benchmark
+	public void priorityHandOff() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		priorityExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		}, 1);
+		done.await();
+	}
+	
+	@Benchmark
+	public void fifoHandOff() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		fifoExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+		done.await();
+	}
+}
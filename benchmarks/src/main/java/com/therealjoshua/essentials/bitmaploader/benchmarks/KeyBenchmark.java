@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.therealjoshua.essentials.bitmaploader.cache.Identifiable;
+import com.therealjoshua.essentials.bitmaploader.cache.KeyHasher;
+
+/**
+ * The cost of the cache keys. LoadRequest can't be made off a device, but it builds its 
+ * keys by calling these same KeyHasher methods, so this measures the key of a 200x200 
+ * ARGB_8888 FILL request at a sample size of 2 with two processors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyBenchmark {
+	
+	private static final int ARGB_8888 = 2;
+	private static final int FILL = 1;
+	
+	@Param({"http://images.example.com/photos/2013/05/12/a8f3c2d1e4b5.jpg?w=640&h=480"})
+	public String uri;
+	
+	private List<Identifiable> processors;
+	
+	@Setup
+	public void setup() {
+		processors = Arrays.asList(new Id("Resize_200_200"), new Id("Rotate_90.0"));
+	}
+	
+	/**
+	 * The 64 bit key the memory cache looks up
+	 */
+	@Benchmark
+	public long longKey() {
+		return hashKey();
+	}
+	
+	/**
+	 * The String key the disk cache looks up
+	 */
+	@Benchmark
+	public String stringKey() {
+		return KeyHasher.toString(hashKey());
+	}
+	
+	/**
+	 * The key shared by every size of the same image
+	 */
+	@Benchmark
+	public String familyKey() {
+		return KeyHasher.toString(KeyHasher.finish(KeyHasher.hashFamily(uri, ARGB_8888)));
+	}
+	
+	@Benchmark
+	public String sourceKey() {
+		return KeyHasher.sourceKey(uri);
+	}
+	
+	private long hashKey() {
+		long h = KeyHasher.hashBase(uri, 2, ARGB_8888, 200, 200, FILL);
+		return KeyHasher.finish(KeyHasher.hashIds(h, processors));
+	}
+	
+	private static class Id implements Identifiable {
+		private final String id;
+		
+		private Id(String id) {
+			this.id = id;
+		}
+		
+		@Override
+		public String getId() {
+			return id;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.therealjoshua.essentials.bitmaploader.cache.KeyHasher;
+import com.therealjoshua.essentials.bitmaploader.cache.LongLruCache;
+
+/**
+ * The get and put paths of the loader's default memory cache. BitmapLongLruCache needs 
+ * Bitmaps so it can't be made off a device, but each of its gets and puts is a single 
+ * call to the LongLruCache it wraps, which is what this measures. The values are stand 
+ * ins for Bitmaps sized at 1 so the cache holds a fixed count.
+ * 
+ * Run with 1, 2, 4 and 8 threads to see how the cache's single lock holds up; 
+ * BenchmarkMain does this.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemoryCacheBenchmark {
+	
+	@State(Scope.Benchmark)
+	public static class Caches {
+		/** The number of images the cache holds */
+		@Param({"256"})
+		public int capacity;
+		
+		/** The number of different images asked for. More than the capacity means misses and evictions. */
+		@Param({"200", "512"})
+		public int images;
+		
+		LongLruCache<Object> longCache;
+		long[] longKeys;
+		Object value = new Object();
+		
+		@Setup
+		public void setup() {
+			longCache = new LongLruCache<Object>(capacity);
+			longKeys = new long[images];
+			for (int i = 0; i < images; i++) {
+				longKeys[i] = KeyHasher.hashKey("http://images.example.com/" + i + ".jpg");
+			}
+			for (int i = 0; i < Math.min(capacity, images); i++) {
+				longCache.put(longKeys[i], value);
+			}
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		@Setup
+		public void setup() {
+			// each thread walks the keys from a different place
+			next = (int)(Thread.currentThread().getId() * 7919);
+		}
+		
+		int next(int count) {
+			next = (next + 1) & 0x7fffffff;
+			return next % count;
+		}
+	}
+	
+	@Benchmark
+	public Object longGet(Caches c, Cursor cursor) {
+		return c.longCache.get(c.longKeys[cursor.next(c.images)]);
+	}
+	
+	@Benchmark
+	public Object longPut(Caches c, Cursor cursor) {
+		return c.longCache.put(c.longKeys[cursor.next(c.images)], c.value);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ColorMatrixKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ForkJoinPixelRunner;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.IntArraySurface;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelRunner;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.StackBlurKernel;
+
+/**
+ * The pixel kernels over an int[] image, run serially and over a ForkJoinPool with
+ * a thread for each processor. The same strips run either way, so the difference is
+ * the speedup from the pool. The GC profiler shows the runners allocate nothing per 
+ * pixel once the strip buffers are made.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PixelKernelBenchmark {
+	
+	@Param({"1024x768", "4000x3000"})
+	public String size;
+	
+	@Param({"10"})
+	public int radius;
+	
+	private IntArraySurface surface;
+	private ColorMatrixKernel saturation;
+	private StackBlurKernel blur;
+	private PixelRunner serial;
+	private ForkJoinPool pool;
+	private PixelRunner forkJoin;
+	
+	@Setup
+	public void setup() {
+		int x = size.indexOf('x');
+		int width = Integer.parseInt(size.substring(0, x));
+		int height = Integer.parseInt(size.substring(x + 1));
+		int[] pixels = new int[width * height];
+		Random random = new Random(42);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+		}
+		surface = new IntArraySurface(pixels, width, height);
+		saturation = ColorMatrixKernel.saturation(0.5f);
+		blur = new StackBlurKernel(radius);
+		serial = new PixelRunner();
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		forkJoin = new ForkJoinPixelRunner(pool);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+	
+	@Benchmark
+	public int[] saturationSerial() {
+		serial.run(saturation, surface);
+		return surface.getPixels();
+	}
+	
+	@Benchmark
+	public int[] saturationForkJoin() {
+		forkJoin.run(saturation, surface);
+		return surface.getPixels();
+	}
+	
+	@Benchmark
+	public int[] blurSerial() {
+		serial.run(blur, surface);
+		return surface.getPixels();
+	}
+	
+	@Benchmark
+	public int[] blurForkJoin() {
+		forkJoin.run(blur, surface);
+		return surface.getPixels();
+	}
+}
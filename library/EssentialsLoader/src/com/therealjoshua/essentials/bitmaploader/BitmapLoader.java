@@ -17,31 +17,53 @@
 package com.therealjoshua.essentials.bitmaploader;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.accounts.NetworkErrorException;
 import android.annotation.SuppressLint;
 import android.app.Service;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 
+import com.therealjoshua.essentials.bitmaploader.LoaderStats.Stage;
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
 import com.therealjoshua.essentials.bitmaploader.cache.Cache;
+import com.therealjoshua.essentials.bitmaploader.cache.KeyHasher;
+import com.therealjoshua.essentials.bitmaploader.cache.LongKeyCache;
+import com.therealjoshua.essentials.bitmaploader.cache.PooledCache;
+import com.therealjoshua.essentials.bitmaploader.cache.StreamCache;
+import com.therealjoshua.essentials.bitmaploader.core.ExecutorProvider;
+import com.therealjoshua.essentials.bitmaploader.processors.AffineProcessor;
 import com.therealjoshua.essentials.bitmaploader.processors.BitmapProcessor;
+import com.therealjoshua.essentials.bitmaploader.processors.CostedProcessor;
+import com.therealjoshua.essentials.bitmaploader.processors.PooledBitmapProcessor;
+import com.therealjoshua.essentials.bitmaploader.processors.Transforms;
 
 /**
  * This class is responsible for the actual loading process. Generally, you will not 
@@ -88,14 +110,55 @@ public class BitmapLoader {
 	/**
 	 * This is used to create instances of an ErrorLog object. If you have specific needs
 	 * for validating if an error is valid, create an implementation of this class and a
-	 * ErrorLog and add your own custom validation log. The default validates based upon time
-	 * and for 60 seconds
+	 * ErrorLog and add your own custom validation log. The default is a 
+	 * {@link HostCircuitBreaker}. The {@link ErrorLogFactoryImpl} validates based upon time.
 	 *
 	 */
 	public static interface ErrorLogFactory {
 		 public ErrorLog createErrorLog(String url, Throwable exception, ErrorSource errorSource);
 	}
 	
+	/**
+	 * An ErrorLogFactory which keeps track of the errors itself instead of the loader keeping 
+	 * an ErrorLog for each url. The loader asks it before every request and tells it about 
+	 * every success, so it can judge more than a single url, such as a whole host being down.
+	 * The methods are called from many threads.
+	 */
+	public static interface ErrorTracker extends ErrorLogFactory {
+		/**
+		 * Gets the error a load of the url should fail with before even checking the caches.
+		 * This must not change the state of the tracker.
+		 * 
+		 * @param url
+		 * @return the error or null to go ahead with the load
+		 */
+		public ErrorLog getError(String url);
+		
+		/**
+		 * Called right before the url is requested from the web
+		 * 
+		 * @param url
+		 * @return the error the request should fail with or null to make the request
+		 */
+		public ErrorLog beforeRequest(String url);
+		
+		/**
+		 * Called when the url was requested without an error
+		 * 
+		 * @param url
+		 */
+		public void onSuccess(String url);
+		
+		/**
+		 * Called instead of onSuccess or createErrorLog when a request which was let through 
+		 * by beforeRequest is canceled before it finished. A canceled request says nothing 
+		 * about the url or its host.
+		 * 
+		 * @param url
+		 */
+		public void onCanceled(String url);
+	}
+	
 	/**
 	 * The callback for when an image is loaded or failed to load. 
 	 *
@@ -124,6 +187,26 @@ public class BitmapLoader {
 		public void onError(Throwable error, ErrorSource source, LoadRequest request);
 	}
 	
+	/**
+	 * Decides where a loaded image is cached. Storing a processed image on disk saves 
+	 * running the processors again but costs a compress on the way in and takes space from
+	 * the other images. An image which is cheap to make again is better made again from 
+	 * the image before the processors.
+	 */
+	public static interface VariantPolicy {
+		/**
+		 * Asked once for each load before the image is decoded. Only {@link VariantStorage#DISK}
+		 * or not matters for a request with no BitmapProcessors.
+		 * 
+		 * @param request the request the image is loaded for. {@link LoadRequest#getProcessorCost()} 
+		 * 		says how costly its processors are.
+		 * @param mode what the disk cache holds. SOURCE only when the disk cache is a StreamCache.
+		 * @return where the image is cached, or null for the disk cache when it holds bitmaps 
+		 * 		and the request has no processors and for {@link VariantStorage#MEMORY} otherwise
+		 */
+		public VariantStorage getStorage(LoadRequest request, DiskCacheMode mode);
+	}
+	
 	/**
 	 * The ConnectionFactory creates a URLConnection from the given URL.
 	 * The purpose of the factory is to allow calling clients a chance to
@@ -157,10 +240,153 @@ public class BitmapLoader {
 	public static enum ErrorSource {
 		ARGUMENT,
 		ERROR_CACHE,
+		/** 
+		 * The device had no network. These errors aren't kept in the error cache. Loads 
+		 * which start while offline wait for the network instead of failing with this.
+		 */
 		NO_NETWORK, 
 		EXTERNAL
 	}
 	
+	/**
+	 * How important a load is. More important loads run first and loads of the same
+	 * priority run newest first.
+	 */
+	public static enum Priority {
+		/** The image is for a view which is on screen now */
+		VISIBLE,
+		/** The image will likely be needed soon, such as the next rows of a list */
+		PREFETCH,
+		/** Nobody is waiting on the image */
+		BACKGROUND
+	}
+	
+	/**
+	 * How an image is fit to the size given to {@link LoadRequest#resize(int, int, ScaleMode)}
+	 */
+	public static enum ScaleMode {
+		/** The whole image fits inside the size. The aspect ratio is kept. */
+		FIT,
+		/** The image covers the whole size and may spill past it on one side. The aspect ratio is kept. */
+		FILL,
+		/** The image is stretched to exactly the size */
+		EXACT
+	}
+	
+	/**
+	 * What goes in the disk cache
+	 */
+	public static enum DiskCacheMode {
+		/** 
+		 * The decoded and processed Bitmap is compressed into the disk cache. This costs a
+		 * compress for every download and the quality and transparency of the format it's 
+		 * compressed to. 
+		 */
+		BITMAP,
+		/** 
+		 * The downloaded file is copied into the disk cache as it is. Images are decoded, 
+		 * resized and processed again when read back, and processed images are also 
+		 * compressed into the cache when the {@link VariantPolicy} says {@link VariantStorage#DISK}. Needs a disk 
+		 * cache which is a {@link StreamCache}, otherwise BITMAP is used. 
+		 */
+		SOURCE
+	}
+	
+	/**
+	 * Where a loaded image is cached, as decided by the {@link VariantPolicy}
+	 */
+	public static enum VariantStorage {
+		/** In the memory cache and compressed into the disk cache */
+		DISK,
+		/** 
+		 * Only in the memory cache. Once it's evicted the image is made again from the 
+		 * image before the processors, which is kept on disk when the disk cache holds 
+		 * bitmaps even if {@link BitmapLoader#setCacheBaseVariant(boolean)} is off.
+		 */
+		MEMORY,
+		/** 
+		 * Not cached at all. The image before the processors is kept in memory, and on disk 
+		 * when the disk cache holds bitmaps, and each load runs the processors on a copy 
+		 * of it. Only for processors which cost next to nothing, since the image is never 
+		 * shown straight from memory.
+		 */
+		RECOMPUTE
+	}
+	
+	/**
+	 * What happens to a download which is canceled part way through
+	 */
+	public static enum PartialDownloadPolicy {
+		/** 
+		 * The connection is closed and the bytes which were read are thrown away. 
+		 * This saves the most bandwidth and CPU. 
+		 */
+		DISCARD,
+		/** 
+		 * The download runs to the end and the image is put in the caches but not delivered. 
+		 * A new load of the same image while this is running picks the download back up. 
+		 * Useful when the user is likely to come back to the image, such as scrolling back 
+		 * up a list. With {@link DiskCacheMode#SOURCE} the download is only written to disk 
+		 * and is decoded once a load picks it back up, so keeping it costs little more than
+		 * the bandwidth.
+		 */
+		KEEP
+	}
+	
+	/**
+	 * The steps of a load which are reported to an {@link EventListener}
+	 */
+	public static enum Event {
+		/** The load is waiting for a thread. Every load which doesn't finish right away starts with this. */
+		ENQUEUED,
+		/** The first stage of the load started running */
+		STARTED,
+		/** The image wasn't in the memory cache */
+		MEMORY_MISS,
+		/** The image was found in the disk cache. The detail is "bitmap" or "source". */
+		DISK_HIT,
+		/** The image wasn't in the disk cache */
+		DISK_MISS,
+		/** The image before the processors was found, so only the processors run. The detail is "memory" or "disk". */
+		BASE_HIT,
+		/** A connection is being opened. The download ends with DOWNLOAD_END. */
+		CONNECT,
+		/** The first bytes of the response arrived */
+		FIRST_BYTE,
+		/** The download stopped, whether it finished or not */
+		DOWNLOAD_END,
+		DECODE_START,
+		DECODE_END,
+		/** A BitmapProcessor started. The detail is the processor's id. */
+		PROCESSOR_START,
+		PROCESSOR_END,
+		DISK_WRITE_START,
+		DISK_WRITE_END,
+		/** The result was handed to the callback. The detail is the BitmapSource or the ErrorSource. */
+		DELIVERED,
+		/** The load was canceled. Every load which started with ENQUEUED ends with this or DELIVERED. */
+		CANCELLED
+	}
+	
+	/**
+	 * Receives the steps of loads as they happen, such as to trace where slow loads spend 
+	 * their time. Events are sent from the thread the step runs on, so implementations must 
+	 * be thread safe and quick.
+	 * 
+	 * Loads of the same image share their work, so the events of the shared work are sent 
+	 * with the request which started it. Each request still gets its own ENQUEUED and 
+	 * DELIVERED or CANCELLED.
+	 */
+	public static interface EventListener {
+		/**
+		 * @param request the load the event is for
+		 * @param event the step
+		 * @param timeNanos the System.nanoTime() of the event
+		 * @param detail more about the event or null
+		 */
+		public void onEvent(LoadRequest request, Event event, long timeNanos, String detail);
+	}
+	
 	/**
 	 * An interface used to to allow a canceling of a load
 	 */
@@ -182,6 +408,24 @@ public class BitmapLoader {
 		private BitmapFactory.Options options;
 		private Rect outPadding;
 		private Callback callback;
+		private EventListener eventListener;
+		private Object tag;
+		private Priority priority = Priority.VISIBLE;
+		private boolean skipMemoryCache;
+		private int targetWidth;
+		private int targetHeight;
+		private ScaleMode scaleMode;
+		// the memoized keys, null until generated or after a setter changes them
+		private String sourceKey;
+		private String key;
+		private long longKey;
+		// the key of the image before the processors run
+		private String baseKey;
+		private long longBaseKey;
+		// the key the sample sizes of the image are indexed under
+		private String familyKey;
+		private int keySampleSize;
+		private Bitmap.Config keyConfig;
 		
 		
 		public BitmapFactory.Options getOptions() { return options; }
@@ -204,6 +448,8 @@ public class BitmapLoader {
 		 */
 		public LoadRequest setUri(String uri) {
 			this.uri = uri;
+			key = null;
+			sourceKey = null;
 			return this;
 		}
 		
@@ -227,6 +473,93 @@ public class BitmapLoader {
 			return this;
 		}
 		
+		/**
+		 * Gets the EventListener that was set for this request only
+		 * 
+		 * @return EventListener
+		 */
+		public EventListener getEventListener() {
+			return eventListener;
+		}
+		
+		/**
+		 * Sets an EventListener which gets the events of this request instead of the
+		 * loader's listener
+		 * 
+		 * @param eventListener
+		 * @return An instance of this to daisy chain
+		 */
+		public LoadRequest setEventListener(EventListener eventListener) {
+			this.eventListener = eventListener;
+			return this;
+		}
+		
+		/**
+		 * Gets the tag that was set
+		 * 
+		 * @return Object
+		 */
+		public Object getTag() {
+			return tag;
+		}
+		
+		/**
+		 * Sets a tag which groups this load with others so they can be paused, resumed 
+		 * and canceled together. See {@link BitmapLoader#pause(Object)}. The tag isn't part 
+		 * of the key and must be set before the request is loaded.
+		 * 
+		 * @param tag any object which is compared with equals, or null for none
+		 * @return An instance of this to daisy chain
+		 */
+		public LoadRequest setTag(Object tag) {
+			this.tag = tag;
+			return this;
+		}
+		
+		/**
+		 * Gets the priority that was set. The default is {@link Priority#VISIBLE}
+		 * 
+		 * @return Priority
+		 */
+		public Priority getPriority() {
+			return priority;
+		}
+		
+		/**
+		 * Sets how important the load is compared to the other loads waiting to run. 
+		 * 
+		 * @param priority
+		 * @return An instance of this to daisy chain
+		 */
+		public LoadRequest setPriority(Priority priority) {
+			this.priority = priority == null ? Priority.VISIBLE : priority;
+			return this;
+		}
+		
+		/**
+		 * Gets if the loaded image is kept out of the memory cache
+		 * 
+		 * @return boolean
+		 */
+		public boolean isSkipMemoryCache() {
+			return skipMemoryCache;
+		}
+		
+		/**
+		 * Sets if the loaded image is kept out of the memory cache. The memory cache is still
+		 * checked first and the image is still put in the disk cache. This is meant for loads
+		 * which only warm up the caches, such as prefetching, and shouldn't push the images 
+		 * on screen out of memory. If another load for the same image wants it in memory, 
+		 * it's put there anyways. The default is false.
+		 * 
+		 * @param skipMemoryCache
+		 * @return An instance of this to daisy chain
+		 */
+		public LoadRequest setSkipMemoryCache(boolean skipMemoryCache) {
+			this.skipMemoryCache = skipMemoryCache;
+			return this;
+		}
+		
 		/**
 		 * Sets the BitmapFactory.Options for when decompressing the image
 		 * 
@@ -235,6 +568,7 @@ public class BitmapLoader {
 		 */
 		public LoadRequest setBitmapFactoryOptions(BitmapFactory.Options options) {
 			this.options = options;
+			key = null;
 			return this;
 		}
 		
@@ -249,6 +583,57 @@ public class BitmapLoader {
 			return this;
 		}
 		
+		/**
+		 * Decodes the image at the size it will be shown at. The size of the image is read 
+		 * before it's decoded and the largest power of 2 inSampleSize which still leaves 
+		 * the image at least as big as the size is used. Then only what's left is 
+		 * scaled. This is far cheaper than decoding the whole image and using a 
+		 * ResizeProcessor. FIT and FILL never scale an image up. The resize happens before 
+		 * any BitmapProcessors run. 
+		 * 
+		 * @param targetWidth the width in pixels. 0 or less clears the resize.
+		 * @param targetHeight the height in pixels. 0 or less clears the resize.
+		 * @param scaleMode how the image is fit to the size. Null is {@link ScaleMode#FIT}.
+		 * @return An instance of this to daisy chain
+		 */
+		public LoadRequest resize(int targetWidth, int targetHeight, ScaleMode scaleMode) {
+			if (targetWidth <= 0 || targetHeight <= 0) {
+				this.targetWidth = 0;
+				this.targetHeight = 0;
+				this.scaleMode = null;
+			} else {
+				this.targetWidth = targetWidth;
+				this.targetHeight = targetHeight;
+				this.scaleMode = scaleMode == null ? ScaleMode.FIT : scaleMode;
+			}
+			key = null;
+			return this;
+		}
+		
+		/**
+		 * Gets the width set by resize or 0 if there is none
+		 * @return
+		 */
+		public int getTargetWidth() {
+			return targetWidth;
+		}
+		
+		/**
+		 * Gets the height set by resize or 0 if there is none
+		 * @return
+		 */
+		public int getTargetHeight() {
+			return targetHeight;
+		}
+		
+		/**
+		 * Gets the ScaleMode set by resize or null if there is none
+		 * @return
+		 */
+		public ScaleMode getScaleMode() {
+			return scaleMode;
+		}
+		
 		/**
 		 * Adds an image process allowing a client to make modifications to the image 
 		 * in a background thread before it is returned. The manipulations are cacheable. 
@@ -260,9 +645,37 @@ public class BitmapLoader {
 			if (processor == null) return this;
 			if (processes == null) processes = new ArrayList<BitmapProcessor>();
 			processes.add(processor);
+			key = null;
 			return this;
 		}
 		
+		/**
+		 * Gets the BitmapProcessors which were added
+		 * 
+		 * @return the processors in the order they run. The list can't be changed.
+		 */
+		public List<BitmapProcessor> getBitmapProcessors() {
+			if (processes == null) return Collections.emptyList();
+			return Collections.unmodifiableList(processes);
+		}
+		
+		/**
+		 * Gets the cost of the most costly BitmapProcessor. A processor which isn't a 
+		 * {@link CostedProcessor} counts as {@link CostedProcessor.Cost#EXPENSIVE}.
+		 * 
+		 * @return the cost or null if there are no processors
+		 */
+		public CostedProcessor.Cost getProcessorCost() {
+			if (!hasProcessors()) return null;
+			CostedProcessor.Cost cost = CostedProcessor.Cost.CHEAP;
+			for (BitmapProcessor p : processes) {
+				CostedProcessor.Cost c = p instanceof CostedProcessor ? ((CostedProcessor)p).getCost() : null;
+				if (c == null) c = CostedProcessor.Cost.EXPENSIVE;
+				if (c.ordinal() > cost.ordinal()) cost = c;
+			}
+			return cost;
+		}
+		
 		/**
 		 * Starts the loading process
 		 * @return The Cancelable task that is loading the image
@@ -273,34 +686,123 @@ public class BitmapLoader {
 		
 		/**
 		 * Generates a savable name for the image loaded via the url and other options
-		 * The same url that has different options will produce different keys. 
+		 * The same url that has different options will produce different keys. The key is
+		 * generated once and reused until a setter changes what goes into it.
 		 * 
-		 * @param url
-		 * @param options
-		 * @return
+		 * @return 16 hex chars which are safe to use as a file name
 		 */
 		private String generateKey() {
-			// http://stackoverflow.com/questions/332079/in-java-how-do-i-convert-a-byte-array-to-a-string-of-hex-digits-while-keeping-l
-			// http://developer.android.com/training/displaying-bitmaps/load-bitmap.html
-			// doesn't seem a need to use MD5, so just hash it.
-			StringBuilder b = new StringBuilder();
-			
-			b.append( uri.hashCode() );
-			
-			if (options == null) b.append("_1");
-			else {
-				b.append("_");
-				b.append( options.inSampleSize );
+			if (!isKeyValid()) hashKey();
+			return key;
+		}
+		
+		/**
+		 * Generates the key of the downloaded file, which depends only on the uri
+		 */
+		private String generateSourceKey() {
+			if (sourceKey == null) sourceKey = KeyHasher.sourceKey(uri);
+			return sourceKey;
+		}
+		
+		/**
+		 * Generates the key of the image after it's decoded and scaled but before the 
+		 * processors run. It's the key of the same request with no processors.
+		 */
+		private String generateBaseKey() {
+			if (!isKeyValid()) hashKey();
+			return baseKey;
+		}
+		
+		private long generateLongBaseKey() {
+			if (!isKeyValid()) hashKey();
+			return longBaseKey;
+		}
+		
+		private boolean hasProcessors() {
+			return processes != null && !processes.isEmpty();
+		}
+		
+		/**
+		 * The same key as {@link #generateKey()} as a primitive long
+		 */
+		private long generateLongKey() {
+			if (!isKeyValid()) hashKey();
+			return longKey;
+		}
+		
+		private boolean isKeyValid() {
+			// the options are owned by the caller and may have been changed after they were set
+			return key != null && keySampleSize == getSampleSize() && keyConfig == getConfig();
+		}
+		
+		private void hashKey() {
+			// a 32 bit hash of the url starts to collide once a few tens of thousands of 
+			// images are on disk, so hash everything into 64 bits
+			keySampleSize = getSampleSize();
+			keyConfig = getConfig();
+			long h = hashBase(keySampleSize);
+			longBaseKey = KeyHasher.finish(h);
+			baseKey = KeyHasher.toString(longBaseKey);
+			familyKey = null;
+			if (!hasProcessors()) {
+				longKey = longBaseKey;
+				key = baseKey;
+				return;
 			}
-			
-			if (processes != null) {
-				for (BitmapProcessor p : processes) {
-					b.append("_");
-					b.append(p.getId());
-				}
+			h = KeyHasher.hashIds(h, processes);
+			longKey = KeyHasher.finish(h);
+			key = KeyHasher.toString(longKey);
+		}
+		
+		/*
+		 * The hash of the base key before it's finished
+		 */
+		private long hashBase(int sampleSize) {
+			return KeyHasher.hashBase(uri, sampleSize, getConfig().ordinal(), targetWidth, targetHeight, 
+					scaleMode != null ? scaleMode.ordinal() : -1);
+		}
+		
+		/**
+		 * Generates the base key of the same request with another sample size
+		 */
+		private String generateBaseKey(int sampleSize) {
+			return KeyHasher.toString(generateLongBaseKey(sampleSize));
+		}
+		
+		private long generateLongBaseKey(int sampleSize) {
+			return KeyHasher.finish(hashBase(sampleSize));
+		}
+		
+		/**
+		 * Generates the key which the sample sizes of the image are indexed under. It 
+		 * leaves out the sample size and everything after it.
+		 */
+		private String generateFamilyKey() {
+			if (!isKeyValid()) hashKey();
+			if (familyKey == null) {
+				familyKey = KeyHasher.toString(KeyHasher.finish(KeyHasher.hashFamily(uri, keyConfig.ordinal())));
 			}
+			return familyKey;
+		}
+		
+		/**
+		 * Whether the size of the base image depends on the sample size alone, so a 
+		 * smaller one can be made by scaling a larger one
+		 */
+		private boolean isVariantIndexed() {
+			return scaleMode == null;
+		}
+		
+		private int getSampleSize() {
+			// the decoder treats anything below 1 as 1
+			if (options == null || options.inSampleSize < 1) return 1;
+			return options.inSampleSize;
+		}
 		
-			return Integer.toHexString(b.toString().hashCode());
+		private Bitmap.Config getConfig() {
+			// the decoder uses ARGB_8888 when no config is given
+			if (options == null || options.inPreferredConfig == null) return Bitmap.Config.ARGB_8888;
+			return options.inPreferredConfig;
 		}
 	}
 	
@@ -311,15 +813,57 @@ public class BitmapLoader {
 	}
 	
 	private static final String TAG = BitmapLoader.class.getSimpleName();
+	private static final int IO_BUFFER_SIZE = 8 * 1024;
+	// the bytes asked for when probing the size of an image from a server which supports ranges
+	private static final int HEADER_PROBE_SIZE = 16 * 1024;
+	// the most read when looking for the size before giving up and decoding the whole image
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	// how long the results delivered in one frame may take, a quarter of a 60fps frame
+	private static final long DEFAULT_DELIVERY_BUDGET = 4;
+	private static PriorityExecutor defaultNetworkExecutor;
+	private static PriorityExecutor defaultDiskExecutor;
+	private static PriorityExecutor defaultDecodeExecutor;
 	// Are these caches thread safe? 
 	private Cache<String, Bitmap> memCache;
 	private Cache<String, Bitmap> diskCache;
 	private LruCache<String, ErrorLog> errors;
-	private Executor executor;
-	private boolean canAccessNetworkState = false;
+	private LruCache<String, ImageHeaderParser.Header> bounds;
+	private Executor networkExecutor;
+	private Executor diskExecutor;
+	private Executor decodeExecutor;
+	private Handler handler;
+	private FrameDispatcher dispatcher;
+	private volatile boolean prepareToDraw = true;
+	private PartialDownloadPolicy partialDownloadPolicy = PartialDownloadPolicy.DISCARD;
 	private Context appContext;
+	private final ConnectivityMonitor connectivity;
+	// the shared monitor holds its listeners weakly, so the loader holds this one
+	private final ConnectivityMonitor.Listener connectivityListener = new ConnectivityMonitor.Listener() {
+		@Override
+		public void onConnectivityChanged(boolean connected) {
+			if (connected) resumeParked();
+		}
+	};
+	// network work waiting for the device to come back online
+	private final ArrayList<PriorityExecutor.CancelableWork> parked = new ArrayList<PriorityExecutor.CancelableWork>();
 	private ErrorLogFactory errorLogFactory;
 	private ConnectionFactory connectionFactory;
+	private volatile BitmapPool bitmapPool;
+	private final StatsRecorder stats = new StatsRecorder();
+	private volatile EventListener eventListener;
+	private DiskCacheMode diskCacheMode = DiskCacheMode.SOURCE;
+	private VariantPolicy variantPolicy = new VariantPolicyImpl();
+	private volatile boolean cacheBaseVariant = false;
+	// the sample sizes of each image which were put in the caches
+	private final VariantIndex memVariants = new VariantIndex(256);
+	private final VariantIndex diskVariants = new VariantIndex(256);
+	// loads which are currently running keyed by the request key. Only touched from the UI thread.
+	private HashMap<String, FetchImageTask> inFlight = new HashMap<String, FetchImageTask>();
+	// the bounds loads which are running. Only touched from the UI thread.
+	private ArrayList<FetchImageBoundsOnlyTask> boundsInFlight = new ArrayList<FetchImageBoundsOnlyTask>();
+	// the paused tags and the stages held back because of them, both guarded by held
+	private final HashSet<Object> pausedTags = new HashSet<Object>();
+	private final ArrayList<HeldStage> held = new ArrayList<HeldStage>();
 	
 	/**
 	 * Constructor
@@ -335,7 +879,8 @@ public class BitmapLoader {
 		this.memCache = memCache;
 		this.diskCache = diskCache;
 		errors = new LruCache<String, BitmapLoader.ErrorLog>(200);
-		errorLogFactory = new ErrorLogFactoryImpl(60 * 1000);
+		bounds = new LruCache<String, ImageHeaderParser.Header>(200);
+		errorLogFactory = new HostCircuitBreaker();
 		
 		if (!(context instanceof Service)) {
 			appContext = context.getApplicationContext();
@@ -343,124 +888,569 @@ public class BitmapLoader {
 			appContext = context;
 		}
 		
-		PackageManager pm = context.getPackageManager();
-		int hasPerm = pm.checkPermission(android.Manifest.permission.ACCESS_NETWORK_STATE, 
-				context.getPackageName());
-		if (hasPerm != PackageManager.PERMISSION_GRANTED) {
-			canAccessNetworkState = true;
-		}
+		connectivity = ConnectivityMonitor.getInstance(appContext);
+		connectivity.addListener(connectivityListener);
 		connectionFactory = new ConnectionFactoryImpl();
-		
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-			executor = PortedAsyncTask.PENTA_THREAD_EXECUTOR;
-		} else {
-			executor = PortedAsyncTask.DUAL_THREAD_EXECUTOR;
-		}
+		handler = new Handler(Looper.getMainLooper());
+		dispatcher = new FrameDispatcher(handler, DEFAULT_DELIVERY_BUDGET);
+		initDefaultExecutors();
+		networkExecutor = defaultNetworkExecutor;
+		diskExecutor = defaultDiskExecutor;
+		decodeExecutor = defaultDecodeExecutor;
 	}
 	
 	/**
-	 * Sets the executor where the asyn task will execute on. 
+	 * Gets the EventListener which was set
 	 * 
-	 * @param executor
+	 * @return EventListener
 	 */
-	public void setExecuteOnExecutor(Executor executor) {
-		this.executor = executor;
+	public EventListener getEventListener() {
+		return eventListener;
 	}
 	
 	/**
-	 * Gets the ErrorLogFactory that was set
+	 * Sets a listener which gets the steps of every load, unless the request has its 
+	 * own listener. A {@link ChromeTraceExporter} writes them out as a trace.
 	 * 
-	 * @return
+	 * @param eventListener the listener or null for none
 	 */
-	public ErrorLogFactory getErrorLogFactory() {
-		return errorLogFactory;
+	public void setEventListener(EventListener eventListener) {
+		this.eventListener = eventListener;
 	}
 	
 	/**
-	 * Sets the factory which is responsible for creating the ErrorLog event when an error happens.
-	 * By allowing a factory, the client can use the implementation of the ErrorLog and have
-	 * it validate itself how it sees fit. The default factory validates upon time passed
+	 * Gets a snapshot of the counters and timings of the loader. Taking one copies a few 
+	 * hundred longs, so it's fine to do every second or so while the app runs.
 	 * 
-	 * @param errorLogFactory
+	 * @return LoaderStats
 	 */
-	public void setErrorLogFactory(ErrorLogFactory errorLogFactory) {
-		this.errorLogFactory = errorLogFactory;
+	public LoaderStats getStats() {
+		return stats.snapshot();
 	}
 	
 	/**
-	 * Sets the URLConnectionFactory which controls the creation of the URLConnection.
-	 * Clients which need to set custom properties can set their own factory
-	 * and provide options on the connection like "no-cache" and such
+	 * Starts the counters and timings over from zero
+	 */
+	public void resetStats() {
+		stats.reset();
+	}
+	
+	/**
+	 * Gets the monitor the loader checks before going to the web. While the device is 
+	 * offline the loads which need the web wait and carry on once it's back online. 
+	 * It's the monitor shared by the whole app, see {@link ConnectivityMonitor#getInstance(Context)}.
 	 * 
-	 * @param connectionFactory
+	 * @return ConnectivityMonitor
 	 */
-	public void setConnectionFactory(ConnectionFactory connectionFactory) {
-		this.connectionFactory = connectionFactory;
+	public ConnectivityMonitor getConnectivityMonitor() {
+		return connectivity;
 	}
 	
 	/**
-	 * Get's the ConnectionFactory that was set 
+	 * Gets the memory cache passed to the constructor
 	 * 
-	 * @return ConnectionFactory
+	 * @return Cache
 	 */
-	public ConnectionFactory getConnectionFactory() {
-		return connectionFactory;
+	public Cache<String, Bitmap> getMemCache() {
+		return memCache;
 	}
 	
 	/**
-	 * Call to load an bitmap. The call will first check if the image is available in memory, 
-	 * then it moves to checking the disk cache and finally it will go to an external source (the web). 
-	 * Before checking for the image on the web, the call will check to see if the url is in a cache of
-	 * IO errors such the call has failed previously. If this is the case and the error is considered
-	 * valid, the call will return immediately.
+	 * Gets the disk cache passed to the constructor
 	 * 
-	 * @param request The value object used to describe how the image should be loaded.
-	 * @return a token which may be null which can be used to cancel the loading task
+	 * @return Cache
 	 */
-	@SuppressLint("NewApi")
-	public Cancelable load(LoadRequest request) {
-		
-		// if the url is blank, fault out immediately
-		if (TextUtils.isEmpty(request.uri)) {
-			if (request.callback != null) request.callback.onError(
-					new IllegalArgumentException("Uri is empty"), 
-					ErrorSource.ARGUMENT,
-					request);
-			return null;
-		}
-		
-		// if the url is in our cached urls, fault out immediately
-		ErrorLog error = getValidError(request.uri);
-		if (error != null) {
-			if (request.callback != null) request.callback.onError(error.getError(), 
-					ErrorSource.ERROR_CACHE, 
-					request);
-			return null;
-		}
-		
+	public Cache<String, Bitmap> getDiskCache() {
+		return diskCache;
+	}
+	
+	/**
+	 * Gets what goes in the disk cache
+	 * 
+	 * @return DiskCacheMode
+	 */
+	public DiskCacheMode getDiskCacheMode() {
+		return diskCacheMode;
+	}
+	
+	/**
+	 * Sets what goes in the disk cache. The default is {@link DiskCacheMode#SOURCE}, which
+	 * only takes effect when the disk cache is a {@link StreamCache} such as the 
+	 * DiskLruCacheFacade.
+	 * 
+	 * @param diskCacheMode the mode or null for the default
+	 */
+	public void setDiskCacheMode(DiskCacheMode diskCacheMode) {
+		this.diskCacheMode = diskCacheMode == null ? DiskCacheMode.SOURCE : diskCacheMode;
+	}
+	
+	/**
+	 * Gets the policy for where loaded images are cached
+	 * 
+	 * @return VariantPolicy
+	 */
+	public VariantPolicy getVariantPolicy() {
+		return variantPolicy;
+	}
+	
+	/**
+	 * Sets the policy for where loaded images are cached. The default, {@link VariantPolicyImpl},
+	 * only puts processed images in the disk cache when their processors are 
+	 * {@link CostedProcessor.Cost#EXPENSIVE}.
+	 * 
+	 * @param variantPolicy the policy or null to keep processed images out of the disk cache. 
+	 * 		Images with no processors still go in a disk cache which holds bitmaps.
+	 */
+	public void setVariantPolicy(VariantPolicy variantPolicy) {
+		this.variantPolicy = variantPolicy;
+	}
+	
+	/**
+	 * Gets if the image before the processors is cached as well. The default is false.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isCacheBaseVariant() {
+		return cacheBaseVariant;
+	}
+	
+	/**
+	 * Sets if a load with BitmapProcessors also caches the image as it was before the
+	 * processors ran. A load of the same uri with other processors, or none, then 
+	 * starts from that image instead of decoding or downloading it again. It's kept in 
+	 * the memory cache and, when the disk cache holds bitmaps instead of the downloaded 
+	 * files, in the disk cache too. This costs a copy of the image on each load.
+	 * 
+	 * Without it, a processed load still starts from an unprocessed image of the uri 
+	 * which happens to be cached, such as one loaded with no processors. The image before
+	 * the processors is also kept when the {@link VariantPolicy} keeps the processed 
+	 * image out of the disk cache, since it's made again from that one.
+	 * 
+	 * @param cacheBaseVariant
+	 */
+	public void setCacheBaseVariant(boolean cacheBaseVariant) {
+		this.cacheBaseVariant = cacheBaseVariant;
+	}
+	
+	/**
+	 * Gets the pool which Bitmaps are reused from
+	 * 
+	 * @return BitmapPool or null if there is none
+	 */
+	public BitmapPool getBitmapPool() {
+		return bitmapPool;
+	}
+	
+	/**
+	 * Sets the pool which Bitmaps are reused from. Decodes and BitmapProcessors take 
+	 * their Bitmaps from the pool and the steps in between processors go back to it. 
+	 * The pool is also given to the memory and disk caches when they are a 
+	 * {@link PooledCache}, so evicted Bitmaps are reused and disk reads decode into 
+	 * pooled Bitmaps.
+	 * 
+	 * The binders retain the Bitmaps they show so those are never reused while on screen.
+	 * If you use the Bitmaps from the callbacks any other way, retain and release them 
+	 * with the pool yourself. The default is no pool.
+	 * 
+	 * @param bitmapPool the pool or null to stop pooling
+	 */
+	public void setBitmapPool(BitmapPool bitmapPool) {
+		this.bitmapPool = bitmapPool;
+		if (memCache instanceof PooledCache) ((PooledCache)memCache).setBitmapPool(bitmapPool);
+		if (diskCache instanceof PooledCache) ((PooledCache)diskCache).setBitmapPool(bitmapPool);
+	}
+	
+	/**
+	 * Creates the executors shared by all the loaders which have not been given their own. 
+	 * Network threads spend most of their time blocked on sockets so there are more of them
+	 * than there are cores. Decoding is bound by the CPU so there is one thread per core, 
+	 * running slightly ahead of the other background threads since it is the last step 
+	 * before the image is shown.
+	 */
+	private static synchronized void initDefaultExecutors() {
+		if (defaultNetworkExecutor != null) return;
+		int networkThreads = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? 5 : 2;
+		int decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		defaultNetworkExecutor = new PriorityExecutor(networkThreads, "BitmapLoader-network", 
+				Process.THREAD_PRIORITY_BACKGROUND);
+		defaultDiskExecutor = new PriorityExecutor(2, "BitmapLoader-disk", 
+				Process.THREAD_PRIORITY_BACKGROUND);
+		defaultDecodeExecutor = new PriorityExecutor(decodeThreads, "BitmapLoader-decode", 
+				Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+	}
+	
+	/**
+	 * Runs every stage of the loading on the same executor. 
+	 * 
+	 * @deprecated Loading is split into network, disk and decode stages which each have their
+	 * 		own executor. Use setNetworkExecutor, setDiskExecutor and setDecodeExecutor. 
+	 * @param executor
+	 */
+	@Deprecated
+	public void setExecuteOnExecutor(Executor executor) {
+		setNetworkExecutor(executor);
+		setDiskExecutor(executor);
+		setDecodeExecutor(executor);
+	}
+	
+	/**
+	 * Gets what happens to a download which is canceled part way through
+	 * 
+	 * @return PartialDownloadPolicy
+	 */
+	public PartialDownloadPolicy getPartialDownloadPolicy() {
+		return partialDownloadPolicy;
+	}
+	
+	/**
+	 * Sets what happens to a download which is canceled part way through. The default is 
+	 * {@link PartialDownloadPolicy#DISCARD}
+	 * 
+	 * @param partialDownloadPolicy
+	 */
+	public void setPartialDownloadPolicy(PartialDownloadPolicy partialDownloadPolicy) {
+		this.partialDownloadPolicy = partialDownloadPolicy == null ? 
+				PartialDownloadPolicy.DISCARD : partialDownloadPolicy;
+	}
+	
+	/**
+	 * Gets how long the results delivered in one frame may take. The default is 4ms.
+	 * 
+	 * @return the budget in milliseconds
+	 */
+	public long getDeliveryBudget() {
+		return dispatcher.getBudget();
+	}
+	
+	/**
+	 * Sets how long the results delivered in one frame may take. The results which 
+	 * finish together are delivered in one batch per frame so the views they change are 
+	 * laid out once. Once the budget is used up the rest wait for the next frame. At 
+	 * least one result is delivered per frame however long it takes.
+	 * 
+	 * @param budgetMillis the budget in milliseconds
+	 */
+	public void setDeliveryBudget(long budgetMillis) {
+		dispatcher.setBudget(budgetMillis);
+	}
+	
+	/**
+	 * Gets if the bitmaps are prepared to draw before they're delivered. The default is true.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isPrepareToDraw() {
+		return prepareToDraw;
+	}
+	
+	/**
+	 * Sets if {@link Bitmap#prepareToDraw()} is called on the loaded bitmaps on the 
+	 * background thread before they're delivered. From API 24 this starts uploading 
+	 * the bitmap to the GPU so the first frame which draws it doesn't have to.
+	 * 
+	 * @param prepareToDraw
+	 */
+	public void setPrepareToDraw(boolean prepareToDraw) {
+		this.prepareToDraw = prepareToDraw;
+	}
+	
+	/**
+	 * Gets the executor which downloads the images
+	 * 
+	 * @return Executor
+	 */
+	public Executor getNetworkExecutor() {
+		return networkExecutor;
+	}
+	
+	/**
+	 * Sets the executor which downloads the images. The work here is bound by IO so 
+	 * the executor can have more threads than the device has cores. The default is a 
+	 * {@link PriorityExecutor} which runs the most important and newest loads first. 
+	 * The priority set on the LoadRequest is ignored by other executors.
+	 * 
+	 * @param executor
+	 */
+	public void setNetworkExecutor(Executor executor) {
+		this.networkExecutor = executor != null ? executor : defaultNetworkExecutor;
+	}
+	
+	/**
+	 * Gets the executor which reads from and writes to the disk cache
+	 * 
+	 * @return Executor
+	 */
+	public Executor getDiskExecutor() {
+		return diskExecutor;
+	}
+	
+	/**
+	 * Sets the executor which reads from and writes to the disk cache. Keeping this seperate from
+	 * the network executor means images on disk never wait behind downloads. 
+	 * 
+	 * @param executor
+	 */
+	public void setDiskExecutor(Executor executor) {
+		this.diskExecutor = executor != null ? executor : defaultDiskExecutor;
+	}
+	
+	/**
+	 * Gets the executor which decodes the downloaded images and runs the BitmapProcessors
+	 * 
+	 * @return Executor
+	 */
+	public Executor getDecodeExecutor() {
+		return decodeExecutor;
+	}
+	
+	/**
+	 * Sets the executor which decodes the downloaded images and runs the BitmapProcessors. 
+	 * The work here is bound by the CPU so there is little use in having more threads 
+	 * than the device has cores.
+	 * 
+	 * @param executor
+	 */
+	public void setDecodeExecutor(Executor executor) {
+		this.decodeExecutor = executor != null ? executor : defaultDecodeExecutor;
+	}
+	
+	/**
+	 * Sets the disk, network and decode executors at once
+	 * 
+	 * @param executors the provider or null to go back to the default executors
+	 */
+	public void setExecutors(ExecutorProvider executors) {
+		setDiskExecutor(executors != null ? executors.getDiskExecutor() : null);
+		setNetworkExecutor(executors != null ? executors.getNetworkExecutor() : null);
+		setDecodeExecutor(executors != null ? executors.getDecodeExecutor() : null);
+	}
+	
+	/**
+	 * Gets the ErrorLogFactory that was set
+	 * 
+	 * @return
+	 */
+	public ErrorLogFactory getErrorLogFactory() {
+		return errorLogFactory;
+	}
+	
+	/**
+	 * Sets the factory which is responsible for creating the ErrorLog event when an error happens.
+	 * By allowing a factory, the client can use the implementation of the ErrorLog and have
+	 * it validate itself how it sees fit. The default factory is a {@link HostCircuitBreaker}
+	 * which fails fast on the hosts that are down. A factory which is an {@link ErrorTracker}
+	 * keeps its own errors, any other has its ErrorLogs kept for each url.
+	 * 
+	 * @param errorLogFactory
+	 */
+	public void setErrorLogFactory(ErrorLogFactory errorLogFactory) {
+		this.errorLogFactory = errorLogFactory;
+	}
+	
+	/**
+	 * Sets the URLConnectionFactory which controls the creation of the URLConnection.
+	 * Clients which need to set custom properties can set their own factory
+	 * and provide options on the connection like "no-cache" and such
+	 * 
+	 * @param connectionFactory
+	 */
+	public void setConnectionFactory(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+	
+	/**
+	 * Get's the ConnectionFactory that was set 
+	 * 
+	 * @return ConnectionFactory
+	 */
+	public ConnectionFactory getConnectionFactory() {
+		return connectionFactory;
+	}
+	
+	/**
+	 * Call to load an bitmap. The call will first check if the image is available in memory, 
+	 * then it moves to checking the disk cache and finally it will go to an external source (the web). 
+	 * Before checking for the image on the web, the call will check to see if the url is in a cache of
+	 * IO errors such the call has failed previously. If this is the case and the error is considered
+	 * valid, the call will return immediately.
+	 * 
+	 * @param request The value object used to describe how the image should be loaded.
+	 * @return a token which may be null which can be used to cancel the loading task
+	 */
+	@SuppressLint("NewApi")
+	public Cancelable load(LoadRequest request) {
+		stats.onRequest();
+		
+		// if the url is blank, fault out immediately
+		if (TextUtils.isEmpty(request.uri)) {
+			stats.onError(ErrorSource.ARGUMENT);
+			if (request.callback != null) request.callback.onError(
+					new IllegalArgumentException("Uri is empty"), 
+					ErrorSource.ARGUMENT,
+					request);
+			return null;
+		}
+		
+		// if the url is in our cached urls, fault out immediately
+		ErrorLog error = getValidError(request.uri);
+		if (error != null) {
+			stats.onError(ErrorSource.ERROR_CACHE);
+			if (request.callback != null) request.callback.onError(error.getError(), 
+					ErrorSource.ERROR_CACHE, 
+					request);
+			return null;
+		}
+		
 		Bitmap bitmap = null;
 		
 		// check if the image is in memory
 		bitmap = getFromMemCache(request);
 		if (bitmap != null) {
+			stats.onHit(BitmapSource.MEMORY);
 			if (request.callback != null) request.callback.onSuccess(bitmap, BitmapSource.MEMORY, request);
 			return null;
 		}
 		
 		// if the image was no in memory, begin to load it async
+		emit(request, Event.MEMORY_MISS, null);
 		if (request.options != null && request.options.inJustDecodeBounds) {
-			FetchImageBoundsOnlyTask task = new FetchImageBoundsOnlyTask(request.callback);
-			if (executor != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) 
-				task.executeOnExecutor(executor, request);
-			else task.execute(request);
-			return task;
-		} else {
-			FetchImageTask task = new FetchImageTask(request.callback);
-			if (executor != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) 
-				task.executeOnExecutor(executor, request);
-			else task.execute(request);
+			// layout passes tend to ask for the same sizes over and over
+			ImageHeaderParser.Header header = bounds.get(request.generateKey());
+			if (header != null) {
+				request.options.outWidth = header.getWidth();
+				request.options.outHeight = header.getHeight();
+				request.options.outMimeType = header.getMimeType();
+				stats.onHit(BitmapSource.MEMORY);
+				if (request.callback != null) request.callback.onSuccess(null, BitmapSource.MEMORY, request);
+				return null;
+			}
+			FetchImageBoundsOnlyTask task = new FetchImageBoundsOnlyTask(request);
+			emit(request, Event.ENQUEUED, null);
+			boundsInFlight.add(task);
+			task.start();
 			return task;
+		} 
+		
+		// if the same image is already being loaded, wait on that load instead of starting another
+		String key = request.generateKey();
+		FetchImageTask task = inFlight.get(key);
+		emit(request, Event.ENQUEUED, null);
+		if (task != null && !task.isAborted()) {
+			return task.subscribe(request);
 		}
+		
+		task = new FetchImageTask(key, request);
+		if (!request.skipMemoryCache) {
+			// the unprocessed image is in memory, so only the processors need to run
+			Bitmap base = request.hasProcessors() ? getBaseFromMemCache(request) : null;
+			if (base != null) {
+				emit(request, Event.BASE_HIT, "memory");
+				task.setBase(base, base.getWidth(), base.getHeight());
+			} else if (startFromLargerVariant(task)) {
+				emit(request, Event.BASE_HIT, "memory");
+			}
+		}
+		Cancelable subscription = task.subscribe(request);
+		inFlight.put(key, task);
+		task.start();
+		return subscription;
+	}
+	
+	/**
+	 * Pauses the loads whose request has the tag. A paused load stays queued but none of 
+	 * its stages run until it's resumed. A stage which is already running finishes and the 
+	 * load stops before the next one. A load shared by several requests only pauses 
+	 * when all of them are paused. Loads started with the tag after this are paused too. 
+	 * 
+	 * @param tag the tag set on the requests with {@link LoadRequest#setTag(Object)}
+	 */
+	public void pause(Object tag) {
+		if (tag == null) return;
+		synchronized (held) {
+			pausedTags.add(tag);
+		}
+	}
+	
+	/**
+	 * Resumes the loads which were paused with the tag. The held stages go back into the 
+	 * queues with the priority of their load.
+	 * 
+	 * @param tag the tag which was paused
+	 */
+	public void resume(Object tag) {
+		if (tag == null) return;
+		synchronized (held) {
+			if (!pausedTags.remove(tag)) return;
+		}
+		releaseHeld();
+	}
+	
+	/**
+	 * Gets if the tag is paused
+	 * 
+	 * @param tag
+	 * @return true if {@link #pause(Object)} was called for the tag and it hasn't been resumed
+	 */
+	public boolean isPaused(Object tag) {
+		synchronized (held) {
+			return pausedTags.contains(tag);
+		}
+	}
+	
+	/**
+	 * Cancels every load whose request has the tag, whether it's paused or not. The 
+	 * callbacks of the canceled requests aren't called. Must be called from the UI thread.
+	 * 
+	 * @param tag the tag set on the requests with {@link LoadRequest#setTag(Object)}
+	 */
+	public void cancel(Object tag) {
+		if (tag == null) return;
+		ArrayList<Cancelable> matches = new ArrayList<Cancelable>();
+		for (FetchImageTask task : inFlight.values()) {
+			for (Subscription s : task.subscribers) {
+				if (tag.equals(s.request.tag)) matches.add(s);
+			}
+		}
+		for (FetchImageBoundsOnlyTask task : boundsInFlight) {
+			if (tag.equals(task.request.tag)) matches.add(task);
+		}
+		for (Cancelable c : matches) {
+			c.cancel();
+		}
+		releaseHeld();
+	}
+	
+	/*
+	 * Starts the task from a larger image of the same uri in memory, which its base is 
+	 * scaled down from. Must be called from the UI thread before the task starts.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean startFromLargerVariant(FetchImageTask task) {
+		LoadRequest request = task.request;
+		if (memCache == null || !request.isVariantIndexed()) return false;
+		int sampleSize = request.getSampleSize();
+		if (sampleSize <= 1) return false;
+		String family = request.generateFamilyKey();
+		int larger;
+		while ((larger = memVariants.findLarger(family, sampleSize, false)) > 0) {
+			Bitmap variant;
+			if (memCache instanceof LongKeyCache) {
+				variant = ((LongKeyCache<Bitmap>)memCache).get(request.generateLongBaseKey(larger));
+			} else {
+				variant = memCache.get(request.generateBaseKey(larger));
+			}
+			if (variant == null) {
+				// evicted since
+				memVariants.remove(family, larger);
+				continue;
+			}
+			// the decoder rounds the sampled size up
+			int width = Math.max(1, (variant.getWidth() * larger + sampleSize - 1) / sampleSize);
+			int height = Math.max(1, (variant.getHeight() * larger + sampleSize - 1) / sampleSize);
+			task.setBase(variant, width, height);
+			return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -476,6 +1466,8 @@ public class BitmapLoader {
 	 * Convenience method to clear the memory cache.
 	 */
 	public void clearMemCache() {
+		bounds.evictAll();
+		memVariants.clear();
 		if (memCache == null) return;
 		memCache.clear();
 	}
@@ -486,6 +1478,7 @@ public class BitmapLoader {
 	 * the process will be synchronous. 
 	 */
 	public void clearDiskCache() {
+		diskVariants.clear();
 		if (diskCache == null) return;
 		if (Looper.myLooper() == Looper.getMainLooper()) {
 			new AsyncTask<Void, Void, Void>() {
@@ -506,8 +1499,12 @@ public class BitmapLoader {
 	/**
 	 * Convenience method to get a Bitmap from the memory cache
 	 */
+	@SuppressWarnings("unchecked")
 	public Bitmap getFromMemCache(LoadRequest request) {
 		if (memCache == null) return null;
+		if (memCache instanceof LongKeyCache) {
+			return ((LongKeyCache<Bitmap>)memCache).get(request.generateLongKey());
+		}
 		return memCache.get(request.generateKey());
 	}
 	
@@ -516,40 +1513,446 @@ public class BitmapLoader {
 	 * thread.
 	 */
 	public Bitmap getFromDiskCache(LoadRequest request) {
+		return getFromDiskCache(request, request.options);
+	}
+	
+	private Bitmap getFromDiskCache(LoadRequest request, BitmapFactory.Options options) {
+		return getFromDiskCache(request, request.generateKey(), options);
+	}
+	
+	private Bitmap getFromDiskCache(LoadRequest request, String key, BitmapFactory.Options options) {
 		if (diskCache == null) return null;
-		if (diskCache instanceof BitmapOptionsDecoder) 
-			((BitmapOptionsDecoder)diskCache).setOptions(request.options, request.outPadding);
-		return diskCache.get(request.generateKey());
+		long start = System.nanoTime();
+		try {
+			if (diskCache instanceof BitmapOptionsDecoder) {
+				// the options are held by the cache until the get, so the two calls can not be
+				// split up by another disk thread
+				synchronized (diskCache) {
+					((BitmapOptionsDecoder)diskCache).setOptions(options, request.outPadding);
+					return diskCache.get(key);
+				}
+			}
+			return diskCache.get(key);
+		} finally {
+			stats.record(Stage.DISK_READ, start);
+		}
 	}
 	
 	/**
 	 * This method is synchronous. Make sure to call it from a background thread
 	 * 
-	 * @param url
-	 * @param options
+	 * @param task the load which is canceled if the stream is closed
 	 * @return
 	 * @throws IOException
 	 */
-	private Bitmap loadExternalBitmap(String url, BitmapFactory.Options options, Rect outPadding) 
-			throws IOException, Exception {
-		URLConnection connection = connectionFactory.getConnection(url);
-		final int IO_BUFFER_SIZE = 8 * 1024;
-		InputStream in = new BufferedInputStream(connection.getInputStream(), IO_BUFFER_SIZE);
-		Bitmap bitmap = BitmapFactory.decodeStream(in, outPadding, options);
-		return bitmap;
+	private Bitmap loadExternalBitmap(LoadTask task) throws IOException, Exception {
+		URLConnection connection = connectionFactory.getConnection(task.request.uri);
+		InputStream in = new BufferedInputStream(getInputStream(connection), IO_BUFFER_SIZE);
+		task.setActiveConnection(connection, in);
+		try {
+			if (task.isAborted()) return null;
+			return BitmapFactory.decodeStream(in, task.request.outPadding, task.decodeOptions);
+		} finally {
+			task.setActiveConnection(null, null);
+			closeQuietly(in);
+		}
+	}
+	
+	/**
+	 * Reads the size of the image from the first bytes of the file without decoding it. 
+	 * Servers which support ranges are only asked for the first bytes. For the rest, the 
+	 * connection is dropped once the size is read. This method is synchronous. Make sure 
+	 * to call it from a background thread
+	 * 
+	 * @param task the load which is canceled if the stream is closed
+	 * @return the header or null if the size wasn't found in the first bytes
+	 * @throws IOException
+	 */
+	private ImageHeaderParser.Header probeExternalHeader(LoadTask task) throws IOException, Exception {
+		URLConnection connection = connectionFactory.getConnection(task.request.uri);
+		boolean partial = false;
+		if (connection instanceof HttpURLConnection) {
+			try {
+				connection.setRequestProperty("Range", "bytes=0-" + (HEADER_PROBE_SIZE - 1));
+			} catch (IllegalStateException e) {
+				// the factory already connected
+			}
+		}
+		InputStream in = new BoundedInputStream(getInputStream(connection), MAX_HEADER_SIZE);
+		task.setActiveConnection(connection, in);
+		try {
+			if (connection instanceof HttpURLConnection) {
+				partial = ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+			}
+			if (task.isAborted()) return null;
+			return ImageHeaderParser.parse(new BufferedInputStream(in, 1024));
+		} finally {
+			task.setActiveConnection(null, null);
+			closeQuietly(in);
+			// don't let the rest of a whole image download just to be thrown away
+			if (!partial && connection instanceof HttpURLConnection) {
+				((HttpURLConnection)connection).disconnect();
+			}
+		}
+	}
+	
+	/*
+	 * The encoded image in memory. The decode reads the buffer in place, so a finished 
+	 * download isn't copied into a second array of the same size.
+	 */
+	private static class EncodedBytes extends ByteArrayOutputStream {
+		
+		private EncodedBytes(int size) {
+			super(size);
+		}
+		
+		/*
+		 * The buffer itself, of which the first size() bytes are the image
+		 */
+		private byte[] getBuffer() {
+			return buf;
+		}
+		
+		private InputStream newInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+	
+	/*
+	 * Ends the stream after a number of bytes
+	 */
+	private static class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+		
+		private BoundedInputStream(InputStream in, long limit) {
+			super(in);
+			remaining = limit;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) return -1;
+			int b = super.read();
+			if (b != -1) remaining--;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			if (remaining <= 0) return -1;
+			int read = super.read(buffer, offset, (int)Math.min(count, remaining));
+			if (read > 0) remaining -= read;
+			return read;
+		}
+		
+		@Override
+		public long skip(long count) throws IOException {
+			long skipped = super.skip(Math.min(count, remaining));
+			if (skipped > 0) remaining -= skipped;
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Downloads the encoded image into memory so it can be decoded on another thread. 
+	 * This method is synchronous. Make sure to call it from a background thread
+	 * 
+	 * @param task the load which is downloading. The download stops if it is aborted.
+	 * @param writer copies the bytes into the disk cache as they arrive, or null. It's 
+	 * 		committed once the whole image was read and aborted otherwise.
+	 * @return the bytes of the image or null if the task was aborted
+	 * @throws IOException
+	 */
+	private EncodedBytes downloadExternalBytes(LoadTask task, SourceWriter writer) throws IOException, Exception {
+		long start = System.nanoTime();
+		emit(task.request, Event.CONNECT, task.request.uri);
+		URLConnection connection = null;
+		InputStream in = null;
+		boolean complete = false;
+		try {
+			connection = connectionFactory.getConnection(task.request.uri);
+			in = getInputStream(connection);
+			task.setActiveConnection(connection, in);
+			int length = connection.getContentLength();
+			// a known length fills the buffer exactly, so it never grows
+			EncodedBytes out = new EncodedBytes(length > 0 ? length : IO_BUFFER_SIZE);
+			byte[] buffer = new byte[IO_BUFFER_SIZE];
+			int count;
+			boolean first = true;
+			while ((count = in.read(buffer)) != -1) {
+				if (first) {
+					stats.record(Stage.NETWORK_TTFB, start);
+					emit(task.request, Event.FIRST_BYTE, null);
+					first = false;
+				}
+				if (task.isAborted()) return null;
+				out.write(buffer, 0, count);
+				stats.onDownloaded(count);
+				if (writer != null) writer.write(buffer, 0, count);
+			}
+			complete = true;
+			if (writer != null) writer.commit();
+			stats.record(Stage.DOWNLOAD, start);
+			return out;
+		} finally {
+			task.setActiveConnection(null, null);
+			closeQuietly(in);
+			if (writer != null && !complete) writer.abort();
+			emit(task.request, Event.DOWNLOAD_END, complete ? null : "incomplete");
+		}
+	}
+	
+	/*
+	 * Copies a download into the disk cache while it's being read. A failed write only 
+	 * drops the copy, never the download.
+	 */
+	private class SourceWriter {
+		private final LoadRequest request;
+		private StreamCache.StreamEditor editor;
+		private OutputStream out;
+		private boolean opened;
+		private boolean committed;
+		
+		private SourceWriter(LoadRequest request) {
+			this.request = request;
+		}
+		
+		private void write(byte[] buffer, int offset, int count) {
+			if (!opened) {
+				opened = true;
+				// null if another download of the same file is writing it
+				editor = ((StreamCache)diskCache).editStream(request.generateSourceKey());
+				if (editor != null) {
+					try {
+						out = editor.getOutputStream();
+					} catch (IOException e) {
+						abort();
+					}
+				}
+			}
+			if (out == null) return;
+			try {
+				out.write(buffer, offset, count);
+			} catch (IOException e) {
+				abort();
+			}
+		}
+		
+		private void commit() {
+			if (out == null) return;
+			try {
+				out.close();
+				editor.commit();
+				committed = true;
+			} catch (IOException e) {
+				editor.abort();
+			}
+			out = null;
+			editor = null;
+		}
+		
+		private void abort() {
+			closeQuietly(out);
+			if (editor != null) editor.abort();
+			out = null;
+			editor = null;
+		}
+		
+		private boolean isCommitted() {
+			return committed;
+		}
+	}
+	
+	/*
+	 * Gets the body of the response. An error status fails with an HttpException so the 
+	 * status can tell a missing file apart from a server which is down.
+	 */
+	private static InputStream getInputStream(URLConnection connection) throws IOException {
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection http = (HttpURLConnection)connection;
+			int code = http.getResponseCode();
+			if (code >= 400) {
+				http.disconnect();
+				throw new HttpException(code, http.getURL().toString());
+			}
+		}
+		return connection.getInputStream();
+	}
+	
+	private static void closeQuietly(Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (Exception e) {}
+	}
+	
+	/**
+	 * Copies the input values of the options so the loader can cancel the decode without 
+	 * touching the caller's object. A null src gives the default options. 
+	 */
+	@SuppressLint("NewApi")
+	private static BitmapFactory.Options copyOptions(BitmapFactory.Options src) {
+		BitmapFactory.Options dst = new BitmapFactory.Options();
+		if (src == null) return dst;
+		dst.inSampleSize = src.inSampleSize;
+		dst.inJustDecodeBounds = src.inJustDecodeBounds;
+		dst.inPreferredConfig = src.inPreferredConfig;
+		dst.inDither = src.inDither;
+		dst.inScaled = src.inScaled;
+		dst.inDensity = src.inDensity;
+		dst.inTargetDensity = src.inTargetDensity;
+		dst.inScreenDensity = src.inScreenDensity;
+		dst.inPurgeable = src.inPurgeable;
+		dst.inInputShareable = src.inInputShareable;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			dst.inMutable = src.inMutable;
+		}
+		return dst;
+	}
+	
+	/**
+	 * Copies the out values from the decode back to the caller's options
+	 */
+	private static void copyOutValues(BitmapFactory.Options src, BitmapFactory.Options dst) {
+		if (dst == null) return;
+		dst.outWidth = src.outWidth;
+		dst.outHeight = src.outHeight;
+		dst.outMimeType = src.outMimeType;
+	}
+	
+	/**
+	 * Gets the width and height the image is resized to, or null when the request doesn't 
+	 * resize or the image is already the right size
+	 */
+	private static int[] getTargetSize(LoadRequest request, int width, int height) {
+		if (request.scaleMode == null || width <= 0 || height <= 0) return null;
+		if (request.scaleMode == ScaleMode.EXACT) {
+			return new int[] { request.targetWidth, request.targetHeight };
+		}
+		float scaleX = (float)request.targetWidth / width;
+		float scaleY = (float)request.targetHeight / height;
+		float scale = request.scaleMode == ScaleMode.FIT ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+		// scaling up only costs memory
+		if (scale >= 1) return null;
+		return new int[] { Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)) };
+	}
+	
+	/**
+	 * Gets the largest power of 2 sample size which leaves the decoded image at least as 
+	 * big as it will be resized to
+	 */
+	private static int computeSampleSize(LoadRequest request, int width, int height) {
+		int[] target = getTargetSize(request, width, height);
+		if (target == null) return 1;
+		int sampleSize = 1;
+		while (width / (sampleSize * 2) >= target[0] && height / (sampleSize * 2) >= target[1]) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+	
+	/**
+	 * Scales what's left after the decoder sampled the image down
+	 */
+	private Bitmap scaleToTarget(LoadRequest request, Bitmap src) {
+		int[] target = getTargetSize(request, src.getWidth(), src.getHeight());
+		if (target == null) return src;
+		return Transforms.scale(src, target[0], target[1], true, bitmapPool);
 	}
 	
 	// should the LoadRequest just apply the processors?
-	private Bitmap applyBitmapProcessors(LoadRequest request, Bitmap src) {
+	private Bitmap applyBitmapProcessors(LoadTask task, Bitmap src) {
+		LoadRequest request = task.request;
 		if (request.processes == null) return src;
+		BitmapPool pool = bitmapPool;
 		Bitmap bm = src;
-		for (BitmapProcessor p : request.processes) {
-			bm = p.process(bm);
+		ArrayList<BitmapProcessor> processes = request.processes;
+		int size = processes.size();
+		for (int i = 0; i < size; ) {
+			// no sense in processing an image nobody will see
+			if (task.isAborted()) {
+				Transforms.dispose(bm, pool);
+				return null;
+			}
+			// a run of geometric processors is drawn once through their combined matrix
+			int end = i;
+			while (end < size && processes.get(end) instanceof AffineProcessor) end++;
+			if (end - i > 1) {
+				bm = applyAffineProcessors(request, bm, processes.subList(i, end), pool);
+				i = end;
+				continue;
+			}
+			BitmapProcessor p = processes.get(i++);
+			long start = System.nanoTime();
+			emit(request, Event.PROCESSOR_START, p.getId());
+			try {
+				if (pool != null && p instanceof PooledBitmapProcessor) {
+					bm = ((PooledBitmapProcessor)p).process(bm, pool);
+				} else {
+					bm = p.process(bm);
+				}
+			} finally {
+				emit(request, Event.PROCESSOR_END, p.getId());
+			}
+			stats.recordProcessor(p.getClass(), start);
+		}
+		return bm;
+	}
+	
+	/*
+	 * The stats and events of a fused run go under AffineProcessor and the ids joined by +
+	 */
+	private Bitmap applyAffineProcessors(LoadRequest request, Bitmap src, 
+			List<BitmapProcessor> run, BitmapPool pool) {
+		ArrayList<AffineProcessor> affine = new ArrayList<AffineProcessor>(run.size());
+		StringBuilder id = new StringBuilder();
+		for (BitmapProcessor p : run) {
+			affine.add((AffineProcessor)p);
+			if (id.length() > 0) id.append('+');
+			id.append(p.getId());
+		}
+		String ids = id.toString();
+		long start = System.nanoTime();
+		emit(request, Event.PROCESSOR_START, ids);
+		Bitmap bm;
+		try {
+			bm = Transforms.transform(src, affine, pool);
+		} finally {
+			emit(request, Event.PROCESSOR_END, ids);
 		}
+		stats.recordProcessor(AffineProcessor.class, start);
 		return bm;
 	}
 	
+	/*
+	 * Keeps the bitmap out of the pool while the loader still hands it around
+	 */
+	private void retain(Bitmap bitmap) {
+		BitmapPool pool = bitmapPool;
+		if (pool != null) pool.retain(bitmap);
+	}
+	
+	private void release(Bitmap bitmap) {
+		BitmapPool pool = bitmapPool;
+		if (pool != null) pool.release(bitmap);
+	}
+	
+	/*
+	 * Sends the event to the listener of the request or else of the loader
+	 */
+	private void emit(LoadRequest request, Event event, String detail) {
+		EventListener listener = request.eventListener != null ? request.eventListener : eventListener;
+		if (listener != null) listener.onEvent(request, event, System.nanoTime(), detail);
+	}
+	
 	private ErrorLog getValidError(String url) {
+		ErrorLogFactory factory = errorLogFactory;
+		if (factory instanceof ErrorTracker) return ((ErrorTracker)factory).getError(url);
 		ErrorLog error = errors.get(url);
 		if (error == null) return null;
 		if (error.isValid()) return error;
@@ -559,272 +1962,1205 @@ public class BitmapLoader {
 		}
 	}
 	
-	private ErrorLog getError(String url) {
+	private ErrorLog getRequestError(String url) {
+		ErrorLogFactory factory = errorLogFactory;
+		if (factory instanceof ErrorTracker) return ((ErrorTracker)factory).beforeRequest(url);
 		return errors.get(url);
 	}
 	
+	@SuppressWarnings("unchecked")
+	private Bitmap getBaseFromMemCache(LoadRequest request) {
+		if (memCache == null) return null;
+		if (memCache instanceof LongKeyCache) {
+			return ((LongKeyCache<Bitmap>)memCache).get(request.generateLongBaseKey());
+		}
+		return memCache.get(request.generateBaseKey());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void putBaseInMemCache(LoadRequest request, Bitmap bitmap) {
+		if (memCache instanceof LongKeyCache) {
+			((LongKeyCache<Bitmap>)memCache).put(request.generateLongBaseKey(), bitmap);
+		} else if (memCache != null) {
+			memCache.put(request.generateBaseKey(), bitmap);
+		} else {
+			return;
+		}
+		if (request.isVariantIndexed()) memVariants.add(request.generateFamilyKey(), request.getSampleSize());
+	}
+	
+	@SuppressWarnings("unchecked")
 	private void putInMemCache(LoadRequest request, Bitmap bitmap) {
-		if (memCache != null) {
+		if (memCache instanceof LongKeyCache) {
+			((LongKeyCache<Bitmap>)memCache).put(request.generateLongKey(), bitmap);
+		} else if (memCache != null) {
 			memCache.put(request.generateKey(), bitmap);
+		} else {
+			return;
+		}
+		// the image is its own base
+		if (!request.hasProcessors() && request.isVariantIndexed()) {
+			memVariants.add(request.generateFamilyKey(), request.getSampleSize());
+		}
+	}
+	
+	private void putInDiskCache(LoadRequest request, Bitmap bitmap) {
+		if (diskCache != null) {
+			long start = System.nanoTime();
+			emit(request, Event.DISK_WRITE_START, null);
+			try {
+				diskCache.put(request.generateKey(), bitmap);
+			} finally {
+				emit(request, Event.DISK_WRITE_END, null);
+			}
+			stats.record(Stage.DISK_WRITE, start);
+			if (!request.hasProcessors()) indexDiskVariant(request);
+		}
+	}
+	
+	/*
+	 * Records a bitmap stored under the request's base key
+	 */
+	private void indexDiskVariant(LoadRequest request) {
+		if (!storesSource() && request.isVariantIndexed()) {
+			diskVariants.add(request.generateFamilyKey(), request.getSampleSize());
+		}
+	}
+	
+	/*
+	 * Decodes the stored bitmap of a larger image of the same uri, sampled down to the 
+	 * request's size. Only for a disk cache which holds bitmaps.
+	 */
+	private Bitmap decodeLargerVariant(LoadRequest request, BitmapFactory.Options options) {
+		if (storesSource() || !(diskCache instanceof StreamCache) || !request.isVariantIndexed()) return null;
+		int sampleSize = request.getSampleSize();
+		if (sampleSize <= 1) return null;
+		String family = request.generateFamilyKey();
+		int larger;
+		while ((larger = diskVariants.findLarger(family, sampleSize, true)) > 0) {
+			InputStream in = ((StreamCache)diskCache).getStream(request.generateBaseKey(larger));
+			if (in != null) {
+				long start = System.nanoTime();
+				try {
+					BitmapFactory.Options o = new BitmapFactory.Options();
+					o.inPreferredConfig = options.inPreferredConfig;
+					o.inSampleSize = sampleSize / larger;
+					Bitmap bitmap = BitmapFactory.decodeStream(new BufferedInputStream(in, IO_BUFFER_SIZE), null, o);
+					if (bitmap != null) return bitmap;
+				} finally {
+					closeQuietly(in);
+					stats.record(Stage.DISK_READ, start);
+				}
+			}
+			// evicted or broken
+			diskVariants.remove(family, larger);
+		}
+		return null;
+	}
+	
+	private boolean storesSource() {
+		return diskCacheMode == DiskCacheMode.SOURCE && diskCache instanceof StreamCache;
+	}
+	
+	/*
+	 * Reads the downloaded file of the request from the disk cache
+	 */
+	private EncodedBytes getSourceFromDiskCache(LoadRequest request) throws IOException {
+		long start = System.nanoTime();
+		InputStream in = ((StreamCache)diskCache).getStream(request.generateSourceKey());
+		if (in == null) {
+			stats.record(Stage.DISK_READ, start);
+			return null;
+		}
+		try {
+			// a file knows how much is left in it, so the buffer fits it exactly
+			EncodedBytes out = new EncodedBytes(Math.max(in.available(), IO_BUFFER_SIZE));
+			byte[] buffer = new byte[IO_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			return out;
+		} finally {
+			closeQuietly(in);
+			stats.record(Stage.DISK_READ, start);
+		}
+	}
+	
+	/*
+	 * Runs the write on the disk executor after everything which is waiting to be read
+	 */
+	private void executeDiskWrite(Runnable write) {
+		if (diskExecutor instanceof PriorityExecutor) {
+			((PriorityExecutor)diskExecutor).execute(write, Priority.BACKGROUND);
+		} else {
+			diskExecutor.execute(write);
+		}
+	}
+	
+	private boolean needsInternet(String uri) {
+		String protocol = UrlUtils.getSchemePrefix(uri);
+		if (protocol == null) return false;
+		return !protocol.equals("file");
+	}
+	
+	/*
+	 * Keeps the network stage of the task until the device is back online
+	 * 
+	 * @return false if the device is online and the stage should run now
+	 */
+	private boolean parkIfOffline(final LoadTask task, final Runnable stage) {
+		synchronized (parked) {
+			// checked while holding the lock so a resume can't slip in between
+			if (connectivity.isConnected()) return false;
+			Iterator<PriorityExecutor.CancelableWork> it = parked.iterator();
+			while (it.hasNext()) {
+				if (it.next().isCancelled()) it.remove();
+			}
+			parked.add(new PriorityExecutor.CancelableWork() {
+				@Override
+				public void run() {
+					task.scheduleExternal(stage);
+				}
+				
+				@Override
+				public boolean isCancelled() {
+					return task.isAborted();
+				}
+			});
+			return true;
+		}
+	}
+	
+	private void resumeParked() {
+		PriorityExecutor.CancelableWork[] work;
+		synchronized (parked) {
+			work = parked.toArray(new PriorityExecutor.CancelableWork[parked.size()]);
+			parked.clear();
+		}
+		for (PriorityExecutor.CancelableWork w : work) {
+			if (!w.isCancelled()) w.run();
+		}
+	}
+	
+	/*
+	 * Keeps the stage back while every request of the task is paused
+	 * 
+	 * @return false if the stage should run now
+	 */
+	private boolean holdIfPaused(LoadTask task, Executor executor, Runnable stage) {
+		synchronized (held) {
+			if (!isPaused(task.tags)) return false;
+			held.add(new HeldStage(task, executor, stage));
+			return true;
+		}
+	}
+	
+	/*
+	 * Must hold the lock on held
+	 */
+	private boolean isPaused(Object[] tags) {
+		if (pausedTags.isEmpty() || tags.length == 0) return false;
+		for (Object tag : tags) {
+			if (tag == null || !pausedTags.contains(tag)) return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Schedules the held stages which are no longer paused and drops the canceled ones
+	 */
+	private void releaseHeld() {
+		ArrayList<HeldStage> ready = new ArrayList<HeldStage>();
+		synchronized (held) {
+			Iterator<HeldStage> it = held.iterator();
+			while (it.hasNext()) {
+				HeldStage h = it.next();
+				if (h.task.isAborted()) {
+					it.remove();
+				} else if (!isPaused(h.task.tags)) {
+					it.remove();
+					ready.add(h);
+				}
+			}
+		}
+		for (HeldStage h : ready) {
+			h.task.schedule(h.executor, h.stage);
+		}
+	}
+	
+	private static class HeldStage {
+		private final LoadTask task;
+		private final Executor executor;
+		private final Runnable stage;
+		
+		private HeldStage(LoadTask task, Executor executor, Runnable stage) {
+			this.task = task;
+			this.executor = executor;
+			this.stage = stage;
+		}
+	}
+	
+	/*
+	 * Schedules the stages of a load onto the loader's executors and delivers the result on 
+	 * the UI thread. Each stage runs on the executor which suits its work so a slow download
+	 * never holds up a thread that could be reading from the disk or decoding. 
+	 */
+	private abstract class LoadTask implements Cancelable {
+		protected final LoadRequest request;
+		// a copy of the request's options which the loader is free to cancel
+		protected final BitmapFactory.Options decodeOptions;
+		protected volatile boolean cancelled = false;
+		protected volatile Priority priority;
+		// the tags of the requests waiting on the task
+		protected volatile Object[] tags;
+		protected Bitmap bitmap;
+		protected Throwable exc;
+		protected ErrorSource errorSource;
+		protected BitmapSource source;
+		// the stage waiting in an executor's queue, kept so it can be promoted
+		private volatile Runnable queued;
+		private volatile Executor queuedOn;
+		// the download in progress, kept so it can be closed when the task is aborted
+		private volatile URLConnection activeConnection;
+		private volatile Closeable activeStream;
+		// an ErrorTracker let a request through which hasn't reported back yet
+		private final AtomicBoolean requestOpen = new AtomicBoolean();
+		
+		private LoadTask(LoadRequest request) {
+			this.request = request;
+			this.priority = request.priority;
+			this.tags = new Object[] { request.tag };
+			this.decodeOptions = copyOptions(request.options);
+		}
+		
+		/**
+		 * Whether the work of this task should stop. 
+		 * 
+		 * @return true if the task was canceled and nothing should be done with the result
+		 */
+		protected boolean isAborted() {
+			return cancelled;
+		}
+		
+		@Override
+		public void cancel() {
+			cancelled = true;
+			if (isAborted()) abort();
+		}
+		
+		/**
+		 * Stops the work which is in progress. A running decode returns early 
+		 * and a running download has its connection closed. 
+		 */
+		private void abort() {
+			decodeOptions.requestCancelDecode();
+			releaseRequest();
+			final URLConnection connection = activeConnection;
+			final Closeable stream = activeStream;
+			if (connection == null && stream == null) return;
+			activeConnection = null;
+			activeStream = null;
+			// closing a socket can block, so never do it on the UI thread
+			PortedAsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					closeQuietly(stream);
+					if (connection instanceof HttpURLConnection) {
+						((HttpURLConnection)connection).disconnect();
+					}
+				}
+			});
+		}
+		
+		private void setActiveConnection(URLConnection connection, Closeable stream) {
+			activeConnection = connection;
+			activeStream = stream;
+		}
+		
+		/**
+		 * Runs the stage on the executor with the priority of the task. The stage is skipped
+		 * if the task is canceled before the stage runs and held back if it's paused.
+		 */
+		protected void schedule(final Executor executor, final Runnable stage) {
+			final long queuedAt = System.nanoTime();
+			Runnable work = new PriorityExecutor.CancelableWork() {
+				@Override
+				public void run() {
+					queued = null;
+					if (isAborted()) return;
+					// scheduled again on resume, so the time paused isn't counted as waiting
+					if (holdIfPaused(LoadTask.this, executor, stage)) return;
+					stats.record(Stage.QUEUE_WAIT, queuedAt);
+					stage.run();
+				}
+				
+				@Override
+				public boolean isCancelled() {
+					return isAborted();
+				}
+			};
+			queued = work;
+			queuedOn = executor;
+			if (executor instanceof PriorityExecutor) {
+				((PriorityExecutor)executor).execute(work, priority);
+			} else {
+				executor.execute(work);
+			}
 		}
-	}
-	
-	private void putInDiskCache(LoadRequest request, Bitmap bitmap) {
-		if (diskCache != null) {
-			diskCache.put(request.generateKey(), bitmap);
+		
+		/**
+		 * Moves the waiting stage up the queue if the priority is more important
+		 */
+		protected void promote(Priority priority) {
+			if (priority.ordinal() >= this.priority.ordinal()) return;
+			this.priority = priority;
+			Runnable work = queued;
+			Executor executor = queuedOn;
+			if (work != null && executor instanceof PriorityExecutor) {
+				((PriorityExecutor)executor).promote(work, priority);
+			}
 		}
-	}
-	
-	private boolean needsInternet(String uri) {
-		String protocol = UrlUtils.getSchemePrefix(uri);
-		if (protocol == null) return false;
-		return !protocol.equals("file");
-	}
-	
-	private boolean hasInternet() {
-		if (canAccessNetworkState) {
-			ConnectivityManager cm = (ConnectivityManager)appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-			NetworkInfo info = cm.getActiveNetworkInfo();
-			if (info != null && info.isConnectedOrConnecting()) {
-				return true;
-			} else {
+		
+		/**
+		 * Queues the result of the task to be delivered with the next frame's batch
+		 */
+		protected void deliver() {
+			Bitmap b = bitmap;
+			if (b != null && prepareToDraw) b.prepareToDraw();
+			dispatcher.post(new Runnable() {
+				@Override
+				public void run() {
+					onDeliver();
+				}
+			});
+		}
+		
+		/**
+		 * Called on the UI thread with the result of the task
+		 */
+		protected abstract void onDeliver();
+		
+		/**
+		 * Checks the error cache and the network before going to the web. 
+		 * 
+		 * @return true if the load can go to the web
+		 */
+		protected boolean canLoadExternal() {
+			// make sure the url or its host isn't in the cached errors
+			ErrorLog loadError = getRequestError(request.uri);
+			if (loadError != null) {
+				exc = loadError.getError();
+				errorSource = ErrorSource.ERROR_CACHE;
 				return false;
 			}
-		} else {
-			// if can't access the network state, assume we have internet
+			if (errorLogFactory instanceof ErrorTracker) requestOpen.set(true);
 			return true;
 		}
+		
+		/*
+		 * Tells the ErrorTracker the request it let through was canceled, so a half open 
+		 * host lets another trial through instead of waiting on this one
+		 */
+		private void releaseRequest() {
+			if (!requestOpen.getAndSet(false)) return;
+			ErrorLogFactory factory = errorLogFactory;
+			if (factory instanceof ErrorTracker) ((ErrorTracker)factory).onCanceled(request.uri);
+		}
+		
+		/**
+		 * Runs the network stage of the task. While the device is offline the stage waits
+		 * and runs once the device is back online.
+		 */
+		protected void scheduleExternal(Runnable stage) {
+			if (needsInternet(request.uri) && parkIfOffline(this, stage)) return;
+			schedule(networkExecutor, stage);
+		}
+		
+		/**
+		 * Records the error from going to the web. A canceled request fails on its closed 
+		 * stream, which isn't the fault of the url or its host, so nothing is recorded for it.
+		 */
+		protected void onExternalError(Throwable e) {
+			if (isAborted()) {
+				releaseRequest();
+				return;
+			}
+			exc = e;
+			if (e instanceof NetworkErrorException 
+					|| (needsInternet(request.uri) && !connectivity.isConnected())) {
+				// the device went offline, which says nothing about the url, so the request
+				// is handed back to the ErrorTracker the same as a canceled one
+				errorSource = ErrorSource.NO_NETWORK;
+				releaseRequest();
+				return;
+			}
+			requestOpen.set(false);
+			errorSource = ErrorSource.EXTERNAL;
+			ErrorLogFactory factory = errorLogFactory;
+			if (factory instanceof ErrorTracker) {
+				// it keeps the errors itself
+				factory.createErrorLog(request.uri, exc, errorSource);
+			} else if (factory != null) {
+				ErrorLog errorLog = factory.createErrorLog(request.uri, exc, errorSource);
+				errors.put(request.uri, errorLog);
+			}
+		}
+		
+		/**
+		 * Records that going to the web worked
+		 */
+		protected void onExternalSuccess() {
+			requestOpen.set(false);
+			ErrorLogFactory factory = errorLogFactory;
+			if (factory instanceof ErrorTracker) ((ErrorTracker)factory).onSuccess(request.uri);
+		}
 	}
 	
 	/*
-	 * This subclass of AsynTask is used to do the actual image fetching. 
+	 * This task is used to do the actual image fetching. 
 	 * The order of fetching is
-	 * 1) Checks the memory
-	 * 2) Checks the disk cache
-	 * 3) Goes to the web
+	 * 1) Checks the memory and the disk cache on the disk executor
+	 * 2) Downloads the image on the network executor
+	 * 3) Decodes the image and runs the processors on the decode executor
+	 * 4) Writes the result to the disk cache on the disk executor, after the 
+	 *    result has been delivered
+	 * 
+	 * A single task is shared by every load request with the same key. Each 
+	 * request subscribes to the task and gets the result through its own callback. 
+	 * The task is only canceled once all of its subscribers have canceled. 
 	 */
-	private class FetchImageTask extends PortedAsyncTask<LoadRequest, Void, Bitmap> implements Cancelable {
-		private Throwable exc;
-		private ErrorSource errorSource;
-		private LoadRequest request;
-		private Callback callback;
-		private BitmapSource source;
+	private class FetchImageTask extends LoadTask {
+		private String key;
+		private ArrayList<Subscription> subscribers = new ArrayList<Subscription>(1);
+		private EncodedBytes data;
+		// set once the download starts if a cancel should let it finish
+		private volatile boolean keepOnCancel = false;
+		// true while every subscriber wants the image kept out of the memory cache
+		private volatile boolean skipMemoryCache;
+		private volatile boolean inMemCache = false;
+		// the bitmap held out of the pool until it's delivered
+		private Bitmap retained;
+		// the cached image before the processors, retained until it's copied, and the size of the copy
+		private Bitmap base;
+		private int baseWidth;
+		private int baseHeight;
+		// where the image is cached, asked of the VariantPolicy once
+		private volatile VariantStorage storage;
 		
-		private FetchImageTask(Callback callback) {
-			this.callback = callback;
+		private FetchImageTask(String key, LoadRequest request) {
+			super(request);
+			this.key = key;
+			skipMemoryCache = request.skipMemoryCache;
+		}
+		
+		private void start() {
+			if (base != null) {
+				schedule(decodeExecutor, new Runnable() {
+					@Override
+					public void run() {
+						processBase();
+					}
+				});
+				return;
+			}
+			scheduleReadCaches();
+		}
+		
+		private void scheduleReadCaches() {
+			schedule(diskExecutor, new Runnable() {
+				@Override
+				public void run() {
+					readCaches();
+				}
+			});
 		}
 		
 		/**
-		 * So calling clients can quit the task without having to know the implementation of what
-		 * this is.
+		 * Starts the task from the image before the processors, or a larger one, which 
+		 * was found in memory. Must be called from the UI thread before the task starts.
+		 * 
+		 * @param width the width of the base, which the bitmap is scaled to
+		 * @param height the height of the base
 		 */
-		@Override
-		public void cancel() {
-			cancel(true);
+		private void setBase(Bitmap bitmap, int width, int height) {
+			// retained on the UI thread, before an eviction can give it to the pool
+			retain(bitmap);
+			base = bitmap;
+			baseWidth = width;
+			baseHeight = height;
+		}
+		
+		/*
+		 * Whoever takes the base releases it
+		 */
+		private synchronized Bitmap takeBase() {
+			Bitmap b = base;
+			base = null;
+			return b;
+		}
+		
+		/**
+		 * Adds the request as a subscriber of this task. If the request is more important 
+		 * than the task and the task is still waiting to run, the task is moved up 
+		 * the queue. Must be called from the UI thread.
+		 * 
+		 * @param request
+		 * @return the token used to cancel only this subscriber
+		 */
+		private Cancelable subscribe(LoadRequest request) {
+			Subscription s = new Subscription(this, request);
+			subscribers.add(s);
+			updateTags();
+			if (!request.skipMemoryCache) skipMemoryCache = false;
+			// a canceled download which is being kept is picked back up
+			cancelled = false;
+			promote(request.priority);
+			// a request which isn't paused gets a paused task going again
+			if (request.tag == null || !isPaused(request.tag)) releaseHeld();
+			return s;
+		}
+		
+		/**
+		 * Removes the subscriber and cancels the task if nobody else is waiting on it.
+		 * Must be called from the UI thread.
+		 */
+		private void unsubscribe(Subscription s) {
+			if (!subscribers.remove(s)) return;
+			updateTags();
+			if (subscribers.isEmpty()) {
+				cancel();
+				if (isAborted()) {
+					// the stage which would have copied the base never runs
+					Bitmap b = takeBase();
+					if (b != null) release(b);
+				}
+				// a kept download stays in flight so a new load can pick it back up
+				if (isAborted() && inFlight.get(key) == this) inFlight.remove(key);
+			}
+		}
+		
+		private void updateTags() {
+			Object[] t = new Object[subscribers.size()];
+			for (int i = 0; i < t.length; i++) {
+				t[i] = subscribers.get(i).request.tag;
+			}
+			tags = t;
 		}
 		
 		@Override
-		protected Bitmap doInBackground(LoadRequest... params) {
-			request = params[0];
-			Bitmap bitmap = null;
+		protected boolean isAborted() {
+			return cancelled && !keepOnCancel;
+		}
+		
+		/*
+		 * disk stage
+		 */
+		private void readCaches() {
+			emit(request, Event.STARTED, null);
+			// another load may have put the image in memory since this one started. Not with 
+			// a pool though, since it could be evicted and reused before it's retained here.
+			if (bitmapPool == null) bitmap = getFromMemCache(request);
+			if (bitmap != null) {
+				source = BitmapSource.MEMORY;
+				deliver();
+				// add to the disk cache while here
+				// at this point, we don't care if the task has been canceled
+				if (diskCache != null && getStorage() == VariantStorage.DISK && !diskCache.hasObject(key)) {
+					putInDiskCache(request, bitmap);
+				}
+				return;
+			}
 			
-			// if task is not canceled, check if the image is in the memory
-			if (!isCancelled()) {
-				bitmap = getFromMemCache(request);
-				if (bitmap != null) {
-					source = BitmapSource.MEMORY;
-					// add to the disk cache while here
-					// at this point, we don't care if the task has been canceled
-					if (diskCache != null) {
-						boolean hasItem = diskCache.hasObject(request.generateKey());
-						if (!hasItem) {
-							putInDiskCache(request, bitmap);
-						}
-					}
-					return bitmap; 
+			try {
+				bitmap = getFromDiskCache(request, decodeOptions);
+			} catch (OutOfMemoryError e) {
+				// clear up some memory and let's try again
+				clearMemCache();
+				System.gc();
+				try {
+					bitmap = getFromDiskCache(request, decodeOptions);
+				} catch (OutOfMemoryError e2) {
+					// give up
 				}
 			}
+			if (bitmap != null) {
+				emit(request, Event.DISK_HIT, "bitmap");
+				// stored in an earlier session maybe
+				if (!request.hasProcessors()) indexDiskVariant(request);
+				source = BitmapSource.DISK;
+				retainUntilDelivered();
+				cacheInMemory();
+				deliver();
+				return; 
+			}
 			
-			// if task is not canceled, check if the image is in the disk cache
-			if (!isCancelled()) {
+			if (isAborted()) return;
+			if (!storesSource()) {
+				// a bitmap cache may hold the image before the processors or a larger one
+				Bitmap b = null;
 				try {
-					bitmap = getFromDiskCache(request);
-				} catch (OutOfMemoryError e) {
-					// clear up some memory and let's try again
-					clearMemCache();
-					System.gc();
-					try {
-						bitmap = getFromDiskCache(request);
-					} catch (OutOfMemoryError e2) {
-						// give up
+					if (request.hasProcessors()) {
+						b = getFromDiskCache(request, request.generateBaseKey(), decodeOptions);
 					}
+					if (b == null) b = decodeLargerVariant(request, decodeOptions);
+				} catch (OutOfMemoryError e) {
+					// the decode will run into the same wall, but maybe not
+				}
+				if (b != null) {
+					emit(request, Event.BASE_HIT, "disk");
+					source = BitmapSource.DISK;
+					final Bitmap decoded = b;
+					schedule(decodeExecutor, new Runnable() {
+						@Override
+						public void run() {
+							processDecoded(keepBase(decoded, false));
+						}
+					});
+					return;
+				}
+			}
+			if (storesSource()) {
+				try {
+					data = getSourceFromDiskCache(request);
+				} catch (OutOfMemoryError e) {
+					// the download will run into the same wall, but maybe not
+				} catch (IOException e) {
+					// a broken entry is downloaded again
 				}
-				if (bitmap != null) {
+				if (data != null) {
+					emit(request, Event.DISK_HIT, "source");
 					source = BitmapSource.DISK;
-					putInMemCache(request, bitmap);
-//					Log.i(TAG, "transaction time : " + (System.currentTimeMillis() - s));
-					return bitmap; 
+					scheduleDecode();
+					return;
 				}
 			}
+			emit(request, Event.DISK_MISS, null);
 			
-			// if task is not canceled, go to the web/external to get the image
-			if (!isCancelled()) {
-				
-				// make sure the url isn't in the cached errors
-				ErrorLog loadError = getError(request.uri);
-				if (loadError != null) {
-					exc = loadError.getError();
-					errorSource = ErrorSource.ERROR_CACHE;
-					return null;
+			if (!canLoadExternal()) {
+				deliver();
+				return;
+			}
+			
+			scheduleExternal(new Runnable() {
+				@Override
+				public void run() {
+					download();
 				}
-				
-				// make sure we have internet before requesting the image
-				if (needsInternet(request.uri) && !hasInternet()) {
-					exc = new NetworkErrorException("No Network Connection");
-					errorSource = ErrorSource.NO_NETWORK;
-					return null;
+			});
+		}
+		
+		/*
+		 * network stage
+		 */
+		private void download() {
+			// TODO: if the uri protocol is of file:// seems needless to cache the image
+			// to the disk cache....right? Or does bitmap options matter here. 
+			keepOnCancel = partialDownloadPolicy == PartialDownloadPolicy.KEEP;
+			// the download goes to disk as it arrives so it's stored by the time it's decoded
+			SourceWriter writer = storesSource() ? new SourceWriter(request) : null;
+			try {
+				data = downloadExternalBytes(this, writer);
+			} catch (OutOfMemoryError e) {
+				clearMemCache();
+				System.gc();
+				try {
+					// try 1 more time
+					if (writer != null) writer = new SourceWriter(request);
+					data = downloadExternalBytes(this, writer);
+				} catch (OutOfMemoryError in2) {
+					// give up
+					onExternalError(in2);
+				} catch (IOException in3) {
+					onExternalError(in3.getCause() != null ? in3.getCause() : in3);
+				} catch (Exception in4) {
+					onExternalError(in4);
 				}
-				
-				// no errors cached, valid internet connection, load the image
-				
-				// TODO: if the uri protocol is of file:// seems needless to cache the image
-				// to the disk cache....right? Or does bitmap options matter here. 
+			} catch (Exception e) {
+				onExternalError(e);
+			}
+			
+			// the connection was closed on purpose, so there is nothing to report
+			if (isAborted()) return;
+			if (data == null && errorSource == ErrorSource.NO_NETWORK && !connectivity.isConnected()) {
+				// the connection dropped part way, so try again once it's back. The retry 
+				// is a new request, so the ErrorTracker is asked again when it runs.
+				exc = null;
+				errorSource = null;
+				scheduleExternal(new Runnable() {
+					@Override
+					public void run() {
+						if (!canLoadExternal()) {
+							deliver();
+							return;
+						}
+						download();
+					}
+				});
+				return;
+			}
+			if (data == null) {
+				deliver();
+				return;
+			}
+			
+			onExternalSuccess();
+			source = BitmapSource.EXTERNAL;
+			if (cancelled && writer != null && writer.isCommitted()) {
+				// a kept download nobody is waiting on is on disk now, which is all it was 
+				// kept for. Only decode it if a load picked it back up.
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (cancelled) {
+							data = null;
+							if (inFlight.get(key) == FetchImageTask.this) inFlight.remove(key);
+						} else {
+							scheduleDecode();
+						}
+					}
+				});
+				return;
+			}
+			scheduleDecode();
+		}
+		
+		private void scheduleDecode() {
+			schedule(decodeExecutor, new Runnable() {
+				@Override
+				public void run() {
+					decode();
+				}
+			});
+		}
+		
+		/*
+		 * decode stage
+		 */
+		private void decode() {
+			long start = System.nanoTime();
+			emit(request, Event.DECODE_START, null);
+			try {
+				bitmap = decodeBytes();
+			} catch (OutOfMemoryError e) {
+				clearMemCache();
+				System.gc();
 				try {
-					bitmap = loadExternalBitmap(request.uri, request.options, request.outPadding);
-					bitmap = applyBitmapProcessors(request, bitmap);
-				} catch (OutOfMemoryError e) {
-					clearMemCache();
-					System.gc();
+					bitmap = decodeBytes();
+				} catch (OutOfMemoryError e2) {
+					// give up
+					exc = e2;
+					errorSource = ErrorSource.EXTERNAL;
+				}
+			}
+			data = null;
+			stats.record(Stage.DECODE, start);
+			emit(request, Event.DECODE_END, bitmap == null ? "failed" : null);
+			finishDecode();
+		}
+		
+		/*
+		 * decode stage of a task which starts from the cached image before the processors
+		 */
+		private void processBase() {
+			emit(request, Event.STARTED, null);
+			Bitmap b = takeBase();
+			if (b == null) return;
+			Bitmap copy = null;
+			try {
+				// the processors dispose of their input, so they get a copy
+				copy = Transforms.copy(b, baseWidth, baseHeight, bitmapPool);
+			} catch (OutOfMemoryError e) {
+				// go the usual way
+			} finally {
+				release(b);
+			}
+			if (copy == null) {
+				scheduleReadCaches();
+				return;
+			}
+			source = BitmapSource.MEMORY;
+			processDecoded(copy);
+		}
+		
+		/*
+		 * Runs the processors on an image which didn't need decoding
+		 */
+		private void processDecoded(Bitmap decoded) {
+			try {
+				bitmap = applyBitmapProcessors(this, decoded);
+			} catch (OutOfMemoryError e) {
+				clearMemCache();
+				bitmap = null;
+				exc = e;
+				errorSource = ErrorSource.EXTERNAL;
+			}
+			finishDecode();
+		}
+		
+		private void finishDecode() {
+			if (isAborted()) {
+				if (bitmap != null) Transforms.dispose(bitmap, bitmapPool);
+				bitmap = null;
+				return;
+			}
+			if (bitmap == null && source == BitmapSource.DISK && canLoadExternal()) {
+				// the file on disk is broken, so get it again
+				exc = null;
+				errorSource = null;
+				scheduleExternal(new Runnable() {
+					@Override
+					public void run() {
+						download();
+					}
+				});
+				return;
+			}
+			if (bitmap == null) {
+				deliver();
+				return;
+			}
+			
+			// the source was set to where the bytes came from
+			retainUntilDelivered();
+			cacheInMemory();
+			
+			// add to the disk cache while here
+			// at this point, we don't care if the task has been canceled
+			final Bitmap result = bitmap;
+			deliver();
+			if (diskCache == null || getStorage() != VariantStorage.DISK) return;
+			// the write can run after the bitmap is evicted, so keep it out of the pool until then
+			retain(result);
+			executeDiskWrite(new Runnable() {
+				@Override
+				public void run() {
 					try {
-						// try 1 more time
-						bitmap = loadExternalBitmap(request.uri, request.options, request.outPadding);
-						bitmap = applyBitmapProcessors(request, bitmap);
-					} catch (OutOfMemoryError in2) {
-						// give up
-						exc = in2;
-						errorSource = ErrorSource.EXTERNAL;
-					} catch (IOException in3) {
-						exc = in3.getCause() != null ? in3.getCause() : in3;
-						errorSource = ErrorSource.EXTERNAL;
-					} catch (Exception in4) {
-						exc = in4;
-						if (in4 instanceof NetworkErrorException)
-							errorSource = ErrorSource.NO_NETWORK;
-						else 
-							errorSource = ErrorSource.EXTERNAL;
+						putInDiskCache(request, result);
+					} finally {
+						release(result);
 					}
-				} catch (IOException e3) {
-					exc = e3;
-					errorSource = ErrorSource.EXTERNAL;
-				} catch (Exception e4) {
-					exc = e4;
-					if (e4 instanceof NetworkErrorException)
-						errorSource = ErrorSource.NO_NETWORK;
-					else 
-						errorSource = ErrorSource.EXTERNAL;
 				}
-				if (exc != null && errorLogFactory != null) {
-					ErrorLog errorLog = errorLogFactory.createErrorLog(request.uri, exc, errorSource);
-					errors.put(request.uri, errorLog);
+			});
+		}
+		
+		private void retainUntilDelivered() {
+			if (bitmapPool == null) return;
+			retained = bitmap;
+			retain(retained);
+		}
+		
+		private void cacheInMemory() {
+			if (!isMemCached()) return;
+			putInMemCache(request, bitmap);
+			inMemCache = true;
+		}
+		
+		private boolean isMemCached() {
+			return !skipMemoryCache && getStorage() != VariantStorage.RECOMPUTE;
+		}
+		
+		private VariantStorage getStorage() {
+			VariantStorage s = storage;
+			if (s == null) {
+				DiskCacheMode mode = storesSource() ? DiskCacheMode.SOURCE : DiskCacheMode.BITMAP;
+				VariantPolicy policy = variantPolicy;
+				if (policy != null) s = policy.getStorage(request, mode);
+				if (s == null) {
+					// the same as VariantPolicyImpl for images with no processors, so the 
+					// disk cache still gets the images when it holds bitmaps
+					s = mode == DiskCacheMode.BITMAP && !request.hasProcessors() 
+							? VariantStorage.DISK : VariantStorage.MEMORY;
+				}
+				// there is nothing to make the image again from without processors
+				if (s == VariantStorage.RECOMPUTE && !request.hasProcessors()) s = VariantStorage.MEMORY;
+				storage = s;
+			}
+			return s;
+		}
+		
+		private Bitmap decodeBytes() {
+			BitmapPool pool = bitmapPool;
+			if (request.scaleMode != null || pool != null) {
+				// the bytes are all in memory so reading the size first costs next to nothing
+				ImageHeaderParser.Header header = null;
+				try {
+					header = ImageHeaderParser.parse(data.newInputStream());
+				} catch (IOException e) {}
+				int width, height;
+				if (header != null) {
+					width = header.getWidth();
+					height = header.getHeight();
+				} else {
+					BitmapFactory.Options bounds = new BitmapFactory.Options();
+					bounds.inJustDecodeBounds = true;
+					BitmapFactory.decodeByteArray(data.getBuffer(), 0, data.size(), bounds);
+					width = bounds.outWidth;
+					height = bounds.outHeight;
 				}
-				
-				if (bitmap != null) {
-					source = BitmapSource.EXTERNAL;
-					// add to the disk cache while here
-					// at this point, we don't care if the task has been canceled
-					putInMemCache(request, bitmap);
-					putInDiskCache(request, bitmap);
+				if (width > 0 && height > 0) {
+					decodeOptions.inSampleSize = Math.max(decodeOptions.inSampleSize, 
+							computeSampleSize(request, width, height));
 				}
+				if (pool != null) pool.prepareDecode(decodeOptions, width, height);
+			}
+			
+			Bitmap reuse = decodeOptions.inBitmap;
+			Bitmap bm;
+			try {
+				bm = BitmapFactory.decodeStream(data.newInputStream(), request.outPadding, decodeOptions);
+			} catch (IllegalArgumentException e) {
+				if (reuse == null) throw e;
+				// the pooled bitmap didn't fit after all
+				pool.put(reuse);
+				reuse = null;
+				decodeOptions.inBitmap = null;
+				bm = BitmapFactory.decodeStream(data.newInputStream(), request.outPadding, decodeOptions);
+			} finally {
+				decodeOptions.inBitmap = null;
 			}
-//			Log.i(TAG, "transaction time : " + (System.currentTimeMillis() - s));
-			return bitmap;
+			if (bm == null) {
+				if (reuse != null) pool.put(reuse);
+				return null;
+			}
+			bm = scaleToTarget(request, bm);
+			return applyBitmapProcessors(this, keepBase(bm, true));
+		}
+		
+		/*
+		 * Caches a copy of the image before the processors if the loader keeps those or
+		 * the processed image is to be made again from it
+		 * 
+		 * @return the image, which is free to be processed
+		 */
+		private Bitmap keepBase(Bitmap bm, boolean toDisk) {
+			if (!request.hasProcessors()) return bm;
+			VariantStorage storage = getStorage();
+			boolean toMemory = memCache != null && !skipMemoryCache 
+					&& (cacheBaseVariant || storage == VariantStorage.RECOMPUTE);
+			// the downloaded file is the base when the disk cache holds those
+			toDisk = toDisk && diskCache != null && !storesSource() 
+					&& (cacheBaseVariant || storage != VariantStorage.DISK);
+			if (!toMemory && !toDisk) return bm;
+			final Bitmap copy;
+			try {
+				copy = Transforms.copy(bm, bitmapPool);
+			} catch (OutOfMemoryError e) {
+				return bm;
+			}
+			if (toMemory) putBaseInMemCache(request, copy);
+			if (!toDisk) return bm;
+			retain(copy);
+			executeDiskWrite(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						diskCache.put(request.generateBaseKey(), copy);
+						indexDiskVariant(request);
+					} finally {
+						release(copy);
+					}
+				}
+			});
+			return bm;
 		}
 		
 		@Override
-		protected void onPostExecute(Bitmap result) {
-			super.onPostExecute(result);
-			if (isCancelled()) return;
-			if (callback == null) return;
+		protected void onDeliver() {
+			try {
+				deliverToSubscribers();
+			} finally {
+				// the binders have retained what they show by now
+				if (retained != null) release(retained);
+				retained = null;
+			}
+		}
+		
+		private void deliverToSubscribers() {
+			if (inFlight.get(key) == this) inFlight.remove(key);
+			if (cancelled) return;
+			// a subscriber which wants the image in memory may have joined after it was decoded
+			if (source != BitmapSource.MEMORY && bitmap != null && !inMemCache && isMemCached()) {
+				putInMemCache(request, bitmap);
+			}
 			
-			if (exc != null || result == null) {
-				callback.onError(exc, errorSource, request);
-			} else {
-				callback.onSuccess(result, source, request);
+			// copy the list since a callback may cancel or start other loads
+			Subscription[] subs = subscribers.toArray(new Subscription[subscribers.size()]);
+			subscribers.clear();
+			for (Subscription s : subs) {
+				if (source != BitmapSource.MEMORY) copyOutValues(decodeOptions, s.request.options);
+				if (exc != null || bitmap == null) {
+					stats.onError(errorSource);
+					emit(s.request, Event.DELIVERED, String.valueOf(errorSource));
+				} else {
+					stats.onHit(source);
+					emit(s.request, Event.DELIVERED, source.name());
+				}
+				Callback callback = s.callback;
+				if (callback == null) continue;
+				if (exc != null || bitmap == null) {
+					callback.onError(exc, errorSource, s.request);
+				} else {
+					callback.onSuccess(bitmap, source, s.request);
+				}
 			}
-			request = null;
-			callback = null;
+			bitmap = null;
 			exc = null;
 		}
 	}
 	
-	private class FetchImageBoundsOnlyTask extends PortedAsyncTask<LoadRequest, Void, Bitmap> implements Cancelable {
-		
-		private boolean checkDiskCache = true;
-		private Throwable exc;
-		private ErrorSource errorSource;
+	/*
+	 * A single load request waiting on a FetchImageTask. Canceling the subscription
+	 * only cancels the task when it was the last one waiting on it.
+	 */
+	private class Subscription implements Cancelable {
+		private FetchImageTask task;
 		private LoadRequest request;
 		private Callback callback;
-		private BitmapSource source;
 		
-		private FetchImageBoundsOnlyTask(Callback callback) {
-			this.callback = callback;
+		private Subscription(FetchImageTask task, LoadRequest request) {
+			this.task = task;
+			this.request = request;
+			this.callback = request.callback;
 		}
 		
 		@Override
 		public void cancel() {
-			cancel(true);
+			if (task.subscribers.contains(this)) emit(request, Event.CANCELLED, null);
+			task.unsubscribe(this);
 		}
-
+	}
+	
+	/*
+	 * Fills in the out values of the request's BitmapFactory.Options without 
+	 * decoding the image. The disk cache is checked on the disk executor and the 
+	 * web on the network executor. From the web, only the header of the file is 
+	 * read when the parser knows the format. The sizes found are kept so the next 
+	 * request for them is answered right away.
+	 */
+	private class FetchImageBoundsOnlyTask extends LoadTask {
+		
+		private boolean checkDiskCache = true;
+		private boolean delivered = false;
+		private Callback callback;
+		
+		private FetchImageBoundsOnlyTask(LoadRequest request) {
+			super(request);
+			this.callback = request.callback;
+		}
+		
 		@Override
-		protected Bitmap doInBackground(LoadRequest... params) {
-			request = params[0];
-			
-			if (!isCancelled() && diskCache != null && checkDiskCache) {
+		public void cancel() {
+			if (!cancelled && !delivered) emit(request, Event.CANCELLED, null);
+			boundsInFlight.remove(this);
+			super.cancel();
+		}
+		
+		private void start() {
+			schedule(diskExecutor, new Runnable() {
+				@Override
+				public void run() {
+					readDiskCache();
+				}
+			});
+		}
+		
+		/*
+		 * disk stage
+		 */
+		private void readDiskCache() {
+			emit(request, Event.STARTED, null);
+			if (diskCache != null && checkDiskCache) {
 				boolean hasObject = diskCache.hasObject(request.generateKey());
 				if (hasObject) {
-					getFromDiskCache(request);
+					emit(request, Event.DISK_HIT, "bitmap");
+					getFromDiskCache(request, decodeOptions);
 					source = BitmapSource.DISK;
-					return null;
+					deliver();
+					return;
 				}
+				if (storesSource() && readSourceHeader()) {
+					emit(request, Event.DISK_HIT, "source");
+					source = BitmapSource.DISK;
+					deliver();
+					return;
+				}
+				emit(request, Event.DISK_MISS, null);
 			}
 			
-			if (!isCancelled()) {
-				ErrorLog loadError = getError(request.uri);
-				if (loadError != null) {
-					exc = loadError.getError();
-					errorSource = ErrorSource.ERROR_CACHE;
-					return null;
-				}
-				
-				// make sure we have internet before requesting the image
-				if (needsInternet(request.uri) && !hasInternet()) {
-					exc = new NetworkErrorException("No Network Connection");
-					errorSource = ErrorSource.NO_NETWORK;
-					return null;
+			if (isAborted()) return;
+			if (!canLoadExternal()) {
+				deliver();
+				return;
+			}
+			
+			scheduleExternal(new Runnable() {
+				@Override
+				public void run() {
+					readExternal();
 				}
-				
-				try {
-					loadExternalBitmap(request.uri, request.options, request.outPadding);
-					source = BitmapSource.EXTERNAL;
-					return null;
-				} catch (IOException e) {
-					exc = e;
-					errorSource = ErrorSource.EXTERNAL;
-				} catch (Exception e) {
-					if (e instanceof NetworkErrorException)
-						errorSource = ErrorSource.NO_NETWORK;
-					else 
-						errorSource = ErrorSource.EXTERNAL;
+			});
+		}
+		
+		private boolean readSourceHeader() {
+			InputStream in = ((StreamCache)diskCache).getStream(request.generateSourceKey());
+			if (in == null) return false;
+			try {
+				ImageHeaderParser.Header header = ImageHeaderParser.parse(new BufferedInputStream(in, 1024));
+				if (header == null) return false;
+				decodeOptions.outWidth = header.getWidth();
+				decodeOptions.outHeight = header.getHeight();
+				decodeOptions.outMimeType = header.getMimeType();
+				return true;
+			} catch (IOException e) {
+				return false;
+			} finally {
+				closeQuietly(in);
+			}
+		}
+		
+		/*
+		 * network stage
+		 */
+		private void readExternal() {
+			try {
+				ImageHeaderParser.Header header = probeExternalHeader(this);
+				if (header != null) {
+					decodeOptions.outWidth = header.getWidth();
+					decodeOptions.outHeight = header.getHeight();
+					decodeOptions.outMimeType = header.getMimeType();
+				} else if (!isAborted()) {
+					// the size wasn't near the start of the file or the format isn't known 
+					// to the parser, so let the decoder find it
+					loadExternalBitmap(this);
 				}
+				source = BitmapSource.EXTERNAL;
+			} catch (Exception e) {
+				onExternalError(e);
 			}
-			
-			return null;
+			if (isAborted()) return;
+			if (exc == null) onExternalSuccess();
+			deliver();
 		}
 		
 		@Override
-		protected void onPostExecute(Bitmap result) {
-			super.onPostExecute(result);
-			if (isCancelled() || callback == null) return;
+		protected void onDeliver() {
+			if (exc == null && decodeOptions.outWidth > 0 && decodeOptions.outHeight > 0) {
+				bounds.put(request.generateKey(), new ImageHeaderParser.Header(decodeOptions.outWidth, 
+						decodeOptions.outHeight, decodeOptions.outMimeType));
+			}
+			boundsInFlight.remove(this);
+			if (cancelled) return;
+			delivered = true;
+			if (exc != null) {
+				stats.onError(errorSource);
+				emit(request, Event.DELIVERED, String.valueOf(errorSource));
+			} else {
+				stats.onHit(source);
+				emit(request, Event.DELIVERED, source.name());
+			}
+			if (callback == null) return;
+			copyOutValues(decodeOptions, request.options);
 			if (exc != null) callback.onError(exc, errorSource, request);
 			else callback.onSuccess(null, source, request);
 		}
@@ -894,6 +3230,25 @@ public class BitmapLoader {
 		}
 	}
 	
+	/**
+	 * The default VariantPolicy. Images which ran through {@link CostedProcessor.Cost#EXPENSIVE} 
+	 * processors go on disk since running those again costs more than decoding the stored 
+	 * image. Images from cheaper processors are only kept in memory and are made again from 
+	 * the image before the processors. Images with no processors go on disk when the disk 
+	 * cache holds bitmaps. When it holds the downloaded files they're cheap to get again 
+	 * from those.
+	 */
+	public static class VariantPolicyImpl implements VariantPolicy {
+		
+		@Override
+		public VariantStorage getStorage(LoadRequest request, DiskCacheMode mode) {
+			CostedProcessor.Cost cost = request.getProcessorCost();
+			if (cost == null) return mode == DiskCacheMode.BITMAP ? VariantStorage.DISK : VariantStorage.MEMORY;
+			return cost == CostedProcessor.Cost.EXPENSIVE ? VariantStorage.DISK : VariantStorage.MEMORY;
+		}
+		
+	}
+	
 	public static class ConnectionFactoryImpl implements ConnectionFactory {
 		
 		private int readTimeout = 0;
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Event;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.EventListener;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.LoadRequest;
+
+/**
+ * An EventListener which keeps the events of loads and writes them out in the Chrome 
+ * trace format, which can be opened in chrome://tracing or Perfetto. Each load is shown as 
+ * a span from ENQUEUED to DELIVERED or CANCELLED and the download, decode, processors and
+ * disk writes are shown as spans on the threads they ran on.
+ * 
+ * Only the most recent events are kept, so it can be left running.
+ * 
+ * <pre>
+ * ChromeTraceExporter trace = new ChromeTraceExporter(10000);
+ * loader.setEventListener(trace);
+ * ...
+ * Writer out = new FileWriter(new File(context.getExternalFilesDir(null), "loads.json"));
+ * trace.writeTo(out);
+ * out.close();
+ * </pre>
+ */
+public class ChromeTraceExporter implements EventListener {
+	
+	private final long[] times;
+	private final Event[] events;
+	private final String[] details;
+	private final String[] uris;
+	private final int[] requestIds;
+	private final long[] threadIds;
+	private final String[] threadNames;
+	private int next = 0;
+	private int size = 0;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param capacity the number of events kept. Older events are dropped.
+	 */
+	public ChromeTraceExporter(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("capacity <= 0");
+		times = new long[capacity];
+		events = new Event[capacity];
+		details = new String[capacity];
+		uris = new String[capacity];
+		requestIds = new int[capacity];
+		threadIds = new long[capacity];
+		threadNames = new String[capacity];
+	}
+	
+	@Override
+	public synchronized void onEvent(LoadRequest request, Event event, long timeNanos, String detail) {
+		Thread thread = Thread.currentThread();
+		times[next] = timeNanos;
+		events[next] = event;
+		details[next] = detail;
+		uris[next] = request.getUri();
+		requestIds[next] = System.identityHashCode(request);
+		threadIds[next] = thread.getId();
+		threadNames[next] = thread.getName();
+		next = (next + 1) % times.length;
+		if (size < times.length) size++;
+	}
+	
+	/**
+	 * Drops all of the events
+	 */
+	public synchronized void clear() {
+		next = 0;
+		size = 0;
+		for (int i = 0; i < times.length; i++) {
+			events[i] = null;
+			details[i] = null;
+			uris[i] = null;
+			threadNames[i] = null;
+		}
+	}
+	
+	/**
+	 * Writes the events which are kept as a JSON trace
+	 * 
+	 * @param out the writer, which is not closed
+	 * @throws IOException
+	 */
+	public synchronized void writeTo(Writer out) throws IOException {
+		out.write("{\"traceEvents\":[");
+		boolean first = true;
+		HashMap<Long, String> threads = new HashMap<Long, String>();
+		int start = (next - size + times.length) % times.length;
+		// nanoTime has no fixed origin, so the trace starts at the oldest event
+		long origin = times[start];
+		for (int n = 0; n < size; n++) {
+			int i = (start + n) % times.length;
+			threads.put(threadIds[i], threadNames[i]);
+			if (!first) out.write(',');
+			first = false;
+			writeEvent(out, i, origin);
+		}
+		for (Long tid : threads.keySet()) {
+			if (!first) out.write(',');
+			first = false;
+			out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+			out.write(Long.toString(tid));
+			out.write(",\"args\":{\"name\":");
+			writeString(out, threads.get(tid));
+			out.write("}}");
+		}
+		out.write("],\"displayTimeUnit\":\"ms\"}");
+		out.flush();
+	}
+	
+	private void writeEvent(Writer out, int i, long origin) throws IOException {
+		Event event = events[i];
+		String name;
+		String phase;
+		switch (event) {
+		case ENQUEUED:
+			name = "load";
+			phase = "b";
+			break;
+		case DELIVERED:
+		case CANCELLED:
+			name = "load";
+			phase = "e";
+			break;
+		case CONNECT:
+			name = "download";
+			phase = "B";
+			break;
+		case DOWNLOAD_END:
+			name = "download";
+			phase = "E";
+			break;
+		case DECODE_START:
+			name = "decode";
+			phase = "B";
+			break;
+		case DECODE_END:
+			name = "decode";
+			phase = "E";
+			break;
+		case PROCESSOR_START:
+			name = "process";
+			phase = "B";
+			break;
+		case PROCESSOR_END:
+			name = "process";
+			phase = "E";
+			break;
+		case DISK_WRITE_START:
+			name = "disk write";
+			phase = "B";
+			break;
+		case DISK_WRITE_END:
+			name = "disk write";
+			phase = "E";
+			break;
+		default:
+			name = event.name().toLowerCase();
+			phase = "i";
+		}
+		
+		out.write("{\"name\":");
+		writeString(out, name);
+		out.write(",\"cat\":\"load\",\"ph\":\"");
+		out.write(phase);
+		out.write("\",\"ts\":");
+		// microseconds with the fraction kept
+		long nanos = Math.max(0, times[i] - origin);
+		out.write(Long.toString(nanos / 1000));
+		out.write('.');
+		out.write(Long.toString(nanos % 1000 + 1000), 1, 3);
+		out.write(",\"pid\":1,\"tid\":");
+		out.write(Long.toString(threadIds[i]));
+		if (phase.equals("b") || phase.equals("e")) {
+			out.write(",\"id\":\"0x");
+			out.write(Integer.toHexString(requestIds[i]));
+			out.write('"');
+		} else if (phase.equals("i")) {
+			out.write(",\"s\":\"t\"");
+		}
+		out.write(",\"args\":{\"uri\":");
+		writeString(out, uris[i]);
+		if (details[i] != null) {
+			out.write(",\"detail\":");
+			writeString(out, details[i]);
+		}
+		if (!name.equals(event.name().toLowerCase())) {
+			out.write(",\"event\":");
+			writeString(out, event.name());
+		}
+		out.write("}}");
+	}
+	
+	private static void writeString(Writer out, String value) throws IOException {
+		if (value == null) {
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': out.write("\\\""); break;
+			case '\\': out.write("\\\\"); break;
+			case '\n': out.write("\\n"); break;
+			case '\r': out.write("\\r"); break;
+			case '\t': out.write("\\t"); break;
+			default:
+				if (c < 0x20) {
+					String hex = Integer.toHexString(c);
+					out.write("\\u");
+					for (int p = hex.length(); p < 4; p++) out.write('0');
+					out.write(hex);
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+}
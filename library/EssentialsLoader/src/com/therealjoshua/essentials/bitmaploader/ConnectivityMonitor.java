@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * Keeps track of whether the device has a network connection. The state is read once and 
+ * then kept up to date from the connectivity broadcasts, so checking it is only reading 
+ * a field and can be done from any thread.
+ * 
+ * Without the ACCESS_NETWORK_STATE permission the state can't be known, so the device is 
+ * always treated as connected.
+ * 
+ * One monitor for the whole app is kept by {@link #getInstance(Context)}, so there is 
+ * only ever one receiver registered however many loaders are made. Listeners are held 
+ * weakly, so a listener only hears about changes while something else holds on to it, 
+ * and adding one never keeps its owner from being collected.
+ */
+public class ConnectivityMonitor {
+	
+	/**
+	 * Notified when the device goes on or offline. Called on the UI thread.
+	 */
+	public static interface Listener {
+		public void onConnectivityChanged(boolean connected);
+	}
+	
+	private static ConnectivityMonitor instance;
+	
+	private final Context appContext;
+	private final CopyOnWriteArrayList<WeakReference<Listener>> listeners = new CopyOnWriteArrayList<WeakReference<Listener>>();
+	private final boolean canAccessNetworkState;
+	private volatile boolean connected = true;
+	private boolean registered = false;
+	
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			update(readState());
+		}
+	};
+	
+	/**
+	 * Gets the monitor shared by the whole app, which is made and started the first time. 
+	 * It's never stopped by the library.
+	 * 
+	 * @param context any context, only its application context is kept
+	 * @return ConnectivityMonitor
+	 */
+	public static synchronized ConnectivityMonitor getInstance(Context context) {
+		if (instance == null) instance = new ConnectivityMonitor(context);
+		return instance;
+	}
+	
+	/**
+	 * Constructor. Starts listening right away. Use {@link #getInstance(Context)} unless 
+	 * a monitor of your own is needed.
+	 * 
+	 * @param context
+	 */
+	public ConnectivityMonitor(Context context) {
+		Context app = context.getApplicationContext();
+		appContext = app != null ? app : context;
+		
+		PackageManager pm = context.getPackageManager();
+		int hasPerm = pm.checkPermission(android.Manifest.permission.ACCESS_NETWORK_STATE, 
+				context.getPackageName());
+		canAccessNetworkState = hasPerm == PackageManager.PERMISSION_GRANTED;
+		start();
+	}
+	
+	/**
+	 * Starts listening for changes again after {@link #stop()}
+	 */
+	public synchronized void start() {
+		if (registered || !canAccessNetworkState) return;
+		connected = readState();
+		appContext.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+		registered = true;
+	}
+	
+	/**
+	 * Stops listening for changes. The device is treated as connected until started again.
+	 * Call from the UI thread. Stopping the shared monitor stops it for every loader.
+	 */
+	public synchronized void stop() {
+		if (!registered) return;
+		appContext.unregisterReceiver(receiver);
+		registered = false;
+		update(true);
+	}
+	
+	/**
+	 * Whether the device has a network connection or is making one
+	 * 
+	 * @return true if connected
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+	
+	/**
+	 * Adds a listener, which is held weakly. Keep a reference to it for as long as it 
+	 * should be called.
+	 * 
+	 * @param listener
+	 */
+	public synchronized void addListener(Listener listener) {
+		if (listener == null) return;
+		for (WeakReference<Listener> ref : listeners) {
+			Listener l = ref.get();
+			if (l == listener) return;
+			// the owners of these are gone
+			if (l == null) listeners.remove(ref);
+		}
+		listeners.add(new WeakReference<Listener>(listener));
+	}
+	
+	public synchronized void removeListener(Listener listener) {
+		for (WeakReference<Listener> ref : listeners) {
+			Listener l = ref.get();
+			if (l == null || l == listener) listeners.remove(ref);
+		}
+	}
+	
+	private boolean readState() {
+		ConnectivityManager cm = (ConnectivityManager)appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo info = cm.getActiveNetworkInfo();
+		return info != null && info.isConnectedOrConnecting();
+	}
+	
+	private void update(boolean connected) {
+		if (this.connected == connected) return;
+		this.connected = connected;
+		for (WeakReference<Listener> ref : listeners) {
+			Listener l = ref.get();
+			if (l != null) l.onConnectivityChanged(connected);
+		}
+	}
+}
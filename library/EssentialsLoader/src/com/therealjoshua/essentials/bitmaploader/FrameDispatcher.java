@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Handler;
+import android.view.Choreographer;
+
+/**
+ * Runs work on the UI thread in batches, one batch per frame. Results which arrive 
+ * close together, such as a screen of disk hits, are delivered in the same frame 
+ * so the views they change are laid out and drawn once instead of once per result.
+ * 
+ * Each batch runs until the time budget is used up and whatever is left waits for 
+ * the next frame, so a large burst can't make a frame late. At least one item runs 
+ * per frame. From API 16 the batches run from a Choreographer frame callback, which is
+ * before the frame's layout pass. On older versions each batch is a single Handler 
+ * message.
+ * 
+ * The work can be queued from any thread.
+ */
+class FrameDispatcher {
+	
+	private final Handler handler;
+	private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+	// true from when a batch is asked for until it starts running
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long budgetNanos;
+	// got on the UI thread, since each looper has its own
+	private volatile Object choreographer;
+	private final Object frameCallback;
+	private final Runnable batch = new Runnable() {
+		@Override
+		public void run() {
+			runBatch();
+		}
+	};
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param handler a Handler of the UI thread
+	 * @param budgetMillis how long each batch may run
+	 */
+	FrameDispatcher(Handler handler, long budgetMillis) {
+		this.handler = handler;
+		setBudget(budgetMillis);
+		frameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? newFrameCallback() : null;
+	}
+	
+	@SuppressLint("NewApi")
+	private Object newFrameCallback() {
+		return new Choreographer.FrameCallback() {
+			@Override
+			public void doFrame(long frameTimeNanos) {
+				runBatch();
+			}
+		};
+	}
+	
+	long getBudget() {
+		return budgetNanos / 1000000L;
+	}
+	
+	void setBudget(long budgetMillis) {
+		budgetNanos = Math.max(0, budgetMillis) * 1000000L;
+	}
+	
+	/**
+	 * Queues the work to run with the next batch
+	 */
+	void post(Runnable work) {
+		queue.add(work);
+		if (scheduled.compareAndSet(false, true)) scheduleBatch();
+	}
+	
+	@SuppressLint("NewApi")
+	private void scheduleBatch() {
+		Object c = choreographer;
+		if (c != null) {
+			// posting a frame callback is safe from any thread
+			((Choreographer)c).postFrameCallback((Choreographer.FrameCallback)frameCallback);
+		} else {
+			handler.post(batch);
+		}
+	}
+	
+	@SuppressLint("NewApi")
+	private void runBatch() {
+		if (choreographer == null && frameCallback != null) {
+			// the first batch comes through the handler to get onto the UI thread
+			choreographer = Choreographer.getInstance();
+			((Choreographer)choreographer).postFrameCallback((Choreographer.FrameCallback)frameCallback);
+			return;
+		}
+		scheduled.set(false);
+		long deadline = System.nanoTime() + budgetNanos;
+		Runnable work;
+		while ((work = queue.poll()) != null) {
+			work.run();
+			if (System.nanoTime() >= deadline) break;
+		}
+		if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) scheduleBatch();
+	}
+}
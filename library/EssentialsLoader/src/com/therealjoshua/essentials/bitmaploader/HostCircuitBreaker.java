@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import android.accounts.NetworkErrorException;
+import android.os.SystemClock;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorLog;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorSource;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorTracker;
+import com.therealjoshua.essentials.bitmaploader.core.CircuitBreaker;
+
+/**
+ * The default ErrorTracker. Errors are tracked per host so that when a server goes down
+ * the loads of all of its images fail fast instead of each url making its own failing 
+ * connection first. See {@link CircuitBreaker} for how a host opens and closes.
+ * 
+ * A 4xx response means the file itself is the problem, so only that url fails fast and 
+ * it doesn't count against the host. Timeouts, refused connections and 5xx responses count 
+ * against the host. Having no network at all counts against neither. Time is counted 
+ * with {@link SystemClock#elapsedRealtime()} so it keeps going while the device sleeps.
+ */
+public class HostCircuitBreaker extends CircuitBreaker implements ErrorTracker {
+	
+	public HostCircuitBreaker() {
+	}
+	
+	@Override
+	public ErrorLog getError(String url) {
+		return toErrorLog(getFailure(url));
+	}
+	
+	@Override
+	public ErrorLog beforeRequest(String url) {
+		return toErrorLog(checkRequest(url));
+	}
+	
+	@Override
+	public ErrorLog createErrorLog(String url, Throwable exception, ErrorSource errorSource) {
+		if (errorSource == ErrorSource.NO_NETWORK || exception instanceof NetworkErrorException) {
+			// the device is offline, which says nothing about the server or the file
+			return new OfflineLog(exception);
+		}
+		return toErrorLog(onFailure(url, exception));
+	}
+	
+	@Override
+	protected long now() {
+		return SystemClock.elapsedRealtime();
+	}
+	
+	private static ErrorLog toErrorLog(Failure failure) {
+		return failure != null ? new FailureLog(failure) : null;
+	}
+	
+	private static class FailureLog implements ErrorLog {
+		private final Failure failure;
+		
+		private FailureLog(Failure failure) {
+			this.failure = failure;
+		}
+		
+		@Override
+		public Throwable getError() {
+			return failure.getError();
+		}
+		
+		@Override
+		public boolean isValid() {
+			return failure.isValid();
+		}
+	}
+	
+	/*
+	 * Never valid, so the load is retried as soon as the network is back
+	 */
+	private static class OfflineLog implements ErrorLog {
+		private final Throwable error;
+		
+		private OfflineLog(Throwable error) {
+			this.error = error;
+		}
+		
+		@Override
+		public Throwable getError() {
+			return error;
+		}
+		
+		@Override
+		public boolean isValid() {
+			return false;
+		}
+	}
+}
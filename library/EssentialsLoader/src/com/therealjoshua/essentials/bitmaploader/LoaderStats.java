@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.BitmapSource;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorSource;
+
+/**
+ * A snapshot of what a {@link BitmapLoader} has done since it was created or its stats were
+ * reset. The counters are read one at a time while loads carry on, so the numbers may be
+ * a few loads apart from one another.
+ * 
+ * Times are kept in histograms with a bucket for each power of two microseconds, so a 
+ * percentile is only known to within a factor of two.
+ * 
+ * @see BitmapLoader#getStats()
+ */
+public final class LoaderStats {
+	
+	/**
+	 * The stages a load is timed in
+	 */
+	public static enum Stage {
+		/** From a stage being queued on an executor to it running */
+		QUEUE_WAIT,
+		/** Reading the image from the disk cache, hits and misses */
+		DISK_READ,
+		/** From opening the connection to the first bytes of the response */
+		NETWORK_TTFB,
+		/** From opening the connection to the last byte of the response */
+		DOWNLOAD,
+		/** Decoding the downloaded bytes, including resizing to the target size */
+		DECODE,
+		/** Compressing an image into the disk cache */
+		DISK_WRITE
+	}
+	
+	/**
+	 * A histogram of times
+	 */
+	public static final class Histogram {
+		/** The number of buckets. The last one also holds every time beyond it. */
+		public static final int BUCKETS = 32;
+		
+		private final long count;
+		private final long totalMicros;
+		private final long[] buckets;
+		
+		Histogram(long count, long totalMicros, long[] buckets) {
+			this.count = count;
+			this.totalMicros = totalMicros;
+			this.buckets = buckets;
+		}
+		
+		/**
+		 * Gets the number of times which were recorded
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * Gets the sum of all the times in microseconds
+		 */
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+		
+		/**
+		 * Gets the average time in microseconds or 0 if nothing was recorded
+		 */
+		public long getMeanMicros() {
+			return count == 0 ? 0 : totalMicros / count;
+		}
+		
+		/**
+		 * Gets the number of times in the bucket
+		 * 
+		 * @param bucket from 0 to {@link #BUCKETS} - 1
+		 */
+		public long getBucketCount(int bucket) {
+			return buckets[bucket];
+		}
+		
+		/**
+		 * Gets the time the bucket holds times below. Bucket 0 holds times under a 
+		 * microsecond and each bucket after holds up to twice the one before.
+		 * 
+		 * @param bucket from 0 to {@link #BUCKETS} - 1
+		 * @return the upper bound in microseconds
+		 */
+		public static long getBucketUpperMicros(int bucket) {
+			return 1L << bucket;
+		}
+		
+		/**
+		 * Gets an estimate of the time which the given fraction of the times are below
+		 * 
+		 * @param fraction such as .5 for the median or .99
+		 * @return the upper bound of the bucket the percentile falls in, in microseconds, 
+		 * 		or 0 if nothing was recorded
+		 */
+		public long getPercentileMicros(double fraction) {
+			// the buckets are read apart from the count, so go by their own sum
+			long total = 0;
+			for (long b : buckets) total += b;
+			if (total == 0) return 0;
+			long rank = (long)Math.ceil(total * Math.min(Math.max(fraction, 0), 1));
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) return getBucketUpperMicros(i);
+			}
+			return getBucketUpperMicros(buckets.length - 1);
+		}
+		
+		@Override
+		public String toString() {
+			return "count=" + count + " mean=" + getMeanMicros() + "us p50<" 
+					+ getPercentileMicros(.5) + "us p99<" + getPercentileMicros(.99) + "us";
+		}
+	}
+	
+	private final long requests;
+	private final long[] hits;
+	private final long[] errors;
+	private final long bytesDownloaded;
+	private final Histogram[] stages;
+	private final Map<String, Histogram> processors;
+	
+	LoaderStats(long requests, long[] hits, long[] errors, long bytesDownloaded, 
+			Histogram[] stages, Map<String, Histogram> processors) {
+		this.requests = requests;
+		this.hits = hits;
+		this.errors = errors;
+		this.bytesDownloaded = bytesDownloaded;
+		this.stages = stages;
+		this.processors = Collections.unmodifiableMap(processors);
+	}
+	
+	/**
+	 * Gets the number of calls to load
+	 */
+	public long getRequests() {
+		return requests;
+	}
+	
+	/**
+	 * Gets the number of loads which were delivered from the source
+	 */
+	public long getHits(BitmapSource source) {
+		return hits[source.ordinal()];
+	}
+	
+	/**
+	 * Gets the share of the successful loads which were delivered from the source
+	 * 
+	 * @return from 0 to 1, or 0 if nothing loaded yet
+	 */
+	public double getHitRatio(BitmapSource source) {
+		long total = 0;
+		for (long h : hits) total += h;
+		return total == 0 ? 0 : (double)hits[source.ordinal()] / total;
+	}
+	
+	/**
+	 * Gets the number of loads which failed with errors from the source
+	 */
+	public long getErrors(ErrorSource source) {
+		return errors[source.ordinal()];
+	}
+	
+	/**
+	 * Gets the number of bytes which were read from the web
+	 */
+	public long getBytesDownloaded() {
+		return bytesDownloaded;
+	}
+	
+	/**
+	 * Gets the times of the stage
+	 */
+	public Histogram getHistogram(Stage stage) {
+		return stages[stage.ordinal()];
+	}
+	
+	/**
+	 * Gets the times of each BitmapProcessor, keyed by the name of its class
+	 * 
+	 * @return a map which can't be changed
+	 */
+	public Map<String, Histogram> getProcessorHistograms() {
+		return processors;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("LoaderStats[requests=").append(requests);
+		for (BitmapSource s : BitmapSource.values()) {
+			sb.append(' ').append(s.name().toLowerCase()).append('=').append(getHits(s));
+		}
+		for (ErrorSource s : ErrorSource.values()) {
+			long count = getErrors(s);
+			if (count > 0) sb.append(" error.").append(s.name().toLowerCase()).append('=').append(count);
+		}
+		sb.append(" bytes=").append(bytesDownloaded);
+		for (Stage s : Stage.values()) {
+			sb.append("\n  ").append(s.name().toLowerCase()).append(": ").append(getHistogram(s));
+		}
+		for (Map.Entry<String, Histogram> e : processors.entrySet()) {
+			sb.append("\n  ").append(e.getKey()).append(": ").append(e.getValue());
+		}
+		return sb.append(']').toString();
+	}
+}
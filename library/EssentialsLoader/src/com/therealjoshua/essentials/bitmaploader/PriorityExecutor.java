@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Priority;
+import com.therealjoshua.essentials.bitmaploader.core.PriorityQueueExecutor;
+
+/**
+ * A {@link PriorityQueueExecutor} ordered by the loader's {@link Priority} which runs its
+ * threads with an android.os.Process priority. Within the same priority the newest work 
+ * runs first.
+ *
+ * Calling execute(Runnable) runs the work with {@link Priority#VISIBLE}.
+ */
+public class PriorityExecutor extends PriorityQueueExecutor {
+
+	private final Executor[] priorityExecutors;
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize the number of threads which run the work
+	 */
+	public PriorityExecutor(int poolSize) {
+		this(poolSize, "PriorityExecutor", Process.THREAD_PRIORITY_BACKGROUND);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize the number of threads which run the work
+	 * @param name the prefix used to name the threads
+	 * @param threadPriority the android.os.Process priority the threads run with such as 
+	 * 		Process.THREAD_PRIORITY_BACKGROUND
+	 */
+	public PriorityExecutor(int poolSize, String name, int threadPriority) {
+		super(poolSize, newThreadFactory(name, threadPriority));
+
+		Priority[] priorities = Priority.values();
+		priorityExecutors = new Executor[priorities.length];
+		for (final Priority p : priorities) {
+			priorityExecutors[p.ordinal()] = new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					PriorityExecutor.this.execute(command, p);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Runs the work with {@link Priority#VISIBLE}
+	 */
+	@Override
+	public void execute(Runnable command) {
+		execute(command, Priority.VISIBLE);
+	}
+
+	/**
+	 * Queues the work to run with the given priority. Work queued later runs before work
+	 * which was queued earlier with the same priority.
+	 *
+	 * @param command the work to run
+	 * @param priority how important the work is
+	 */
+	public void execute(Runnable command, Priority priority) {
+		if (priority == null) priority = Priority.VISIBLE;
+		execute(command, priority.ordinal());
+	}
+
+	/**
+	 * Gets an Executor which queues all of its work on this executor with the given priority.
+	 * The same instance is returned for each call.
+	 *
+	 * @param priority
+	 * @return Executor
+	 */
+	public Executor withPriority(Priority priority) {
+		if (priority == null) priority = Priority.VISIBLE;
+		return priorityExecutors[priority.ordinal()];
+	}
+
+	/**
+	 * Moves work which is still waiting in the queue so that it runs as the newest work of the
+	 * given priority. The work never drops to a lower priority than it already has.
+	 *
+	 * @param command the work which was passed to execute
+	 * @param priority the new priority or null to keep the one it has
+	 * @return true if the work was still waiting and has been requeued
+	 */
+	public boolean promote(Runnable command, Priority priority) {
+		return promote(command, priority != null ? priority.ordinal() : Integer.MAX_VALUE);
+	}
+
+	private static ThreadFactory newThreadFactory(final String name, final int threadPriority) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(threadPriority);
+						r.run();
+					}
+				}, name + " #" + count.getAndIncrement());
+			}
+		};
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.BitmapSource;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorSource;
+import com.therealjoshua.essentials.bitmaploader.LoaderStats.Histogram;
+import com.therealjoshua.essentials.bitmaploader.LoaderStats.Stage;
+
+/*
+ * Records the stats of a loader. Recording only adds to atomic counters, so it never locks
+ * or allocates and can be called from any thread.
+ */
+final class StatsRecorder {
+	
+	// each histogram is laid out as the count, the total and then the buckets
+	private static final int COUNT = 0;
+	private static final int TOTAL = 1;
+	private static final int HISTOGRAM_SIZE = 2 + Histogram.BUCKETS;
+	
+	private static final int REQUESTS = 0;
+	private static final int BYTES = 1;
+	private static final int HITS = 2;
+	private static final int ERRORS = HITS + BitmapSource.values().length;
+	private static final int COUNTERS = ERRORS + ErrorSource.values().length;
+	
+	private volatile AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+	private volatile AtomicLongArray stages = new AtomicLongArray(Stage.values().length * HISTOGRAM_SIZE);
+	private volatile ConcurrentHashMap<Class<?>, AtomicLongArray> processors = 
+			new ConcurrentHashMap<Class<?>, AtomicLongArray>();
+	
+	void onRequest() {
+		counters.incrementAndGet(REQUESTS);
+	}
+	
+	void onDownloaded(long bytes) {
+		counters.addAndGet(BYTES, bytes);
+	}
+	
+	void onHit(BitmapSource source) {
+		counters.incrementAndGet(HITS + source.ordinal());
+	}
+	
+	void onError(ErrorSource source) {
+		if (source != null) counters.incrementAndGet(ERRORS + source.ordinal());
+	}
+	
+	/**
+	 * Records the time since start
+	 * 
+	 * @param start the System.nanoTime() the stage started at
+	 */
+	void record(Stage stage, long start) {
+		record(stages, stage.ordinal() * HISTOGRAM_SIZE, System.nanoTime() - start);
+	}
+	
+	void recordProcessor(Class<?> processor, long start) {
+		long nanos = System.nanoTime() - start;
+		ConcurrentHashMap<Class<?>, AtomicLongArray> map = processors;
+		AtomicLongArray histogram = map.get(processor);
+		if (histogram == null) {
+			// only the first time a processor class is seen
+			AtomicLongArray created = new AtomicLongArray(HISTOGRAM_SIZE);
+			histogram = map.putIfAbsent(processor, created);
+			if (histogram == null) histogram = created;
+		}
+		record(histogram, 0, nanos);
+	}
+	
+	private static void record(AtomicLongArray array, int offset, long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), Histogram.BUCKETS - 1);
+		array.incrementAndGet(offset + COUNT);
+		array.addAndGet(offset + TOTAL, micros);
+		array.incrementAndGet(offset + 2 + bucket);
+	}
+	
+	void reset() {
+		counters = new AtomicLongArray(COUNTERS);
+		stages = new AtomicLongArray(Stage.values().length * HISTOGRAM_SIZE);
+		processors = new ConcurrentHashMap<Class<?>, AtomicLongArray>();
+	}
+	
+	LoaderStats snapshot() {
+		AtomicLongArray c = counters;
+		long[] hits = new long[BitmapSource.values().length];
+		for (int i = 0; i < hits.length; i++) hits[i] = c.get(HITS + i);
+		long[] errors = new long[ErrorSource.values().length];
+		for (int i = 0; i < errors.length; i++) errors[i] = c.get(ERRORS + i);
+		
+		AtomicLongArray s = stages;
+		Histogram[] histograms = new Histogram[Stage.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = toHistogram(s, i * HISTOGRAM_SIZE);
+		}
+		Map<String, Histogram> byProcessor = new HashMap<String, Histogram>();
+		for (Map.Entry<Class<?>, AtomicLongArray> e : processors.entrySet()) {
+			byProcessor.put(e.getKey().getName(), toHistogram(e.getValue(), 0));
+		}
+		return new LoaderStats(c.get(REQUESTS), hits, errors, c.get(BYTES), histograms, byProcessor);
+	}
+	
+	private static Histogram toHistogram(AtomicLongArray array, int offset) {
+		long[] buckets = new long[Histogram.BUCKETS];
+		for (int i = 0; i < buckets.length; i++) buckets[i] = array.get(offset + 2 + i);
+		return new Histogram(array.get(offset + COUNT), array.get(offset + TOTAL), buckets);
+	}
+}
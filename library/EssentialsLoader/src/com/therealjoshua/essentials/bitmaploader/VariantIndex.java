@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Remembers which sample sizes of each image have been put in a cache, so a request 
+ * for a smaller size can be made from a larger one which is already there instead of 
+ * going back to the disk or the network. The images are grouped by a key of their uri 
+ * and config. Only the images without a scale mode or processors are indexed, since 
+ * those are the only ones whose size depends on the sample size alone.
+ * 
+ * The index only knows what was put in the cache, not what's still there, so a 
+ * variant which turns out to be gone is removed by whoever looked for it.
+ * 
+ * This class is thread safe.
+ */
+class VariantIndex {
+	
+	private static final int[] EMPTY = new int[0];
+	
+	private final LruCache<String, int[]> families;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxFamilies the number of images whose sample sizes are remembered
+	 */
+	VariantIndex(int maxFamilies) {
+		families = new LruCache<String, int[]>(maxFamilies);
+	}
+	
+	synchronized void add(String family, int sampleSize) {
+		int[] sizes = families.get(family);
+		if (sizes == null) sizes = EMPTY;
+		for (int s : sizes) {
+			if (s == sampleSize) return;
+		}
+		int[] added = new int[sizes.length + 1];
+		System.arraycopy(sizes, 0, added, 0, sizes.length);
+		added[sizes.length] = sampleSize;
+		families.put(family, added);
+	}
+	
+	synchronized void remove(String family, int sampleSize) {
+		int[] sizes = families.get(family);
+		if (sizes == null) return;
+		int n = 0;
+		int[] kept = new int[sizes.length];
+		for (int s : sizes) {
+			if (s != sampleSize) kept[n++] = s;
+		}
+		if (n == sizes.length) return;
+		if (n == 0) {
+			families.remove(family);
+		} else {
+			int[] trimmed = new int[n];
+			System.arraycopy(kept, 0, trimmed, 0, n);
+			families.put(family, trimmed);
+		}
+	}
+	
+	/**
+	 * Finds the smallest indexed image which is still larger than the sample size makes it, 
+	 * which is the one with the largest sample size below it
+	 * 
+	 * @param family the key of the uri and config
+	 * @param sampleSize the sample size which is wanted
+	 * @param divisor true to only find sample sizes which divide sampleSize evenly
+	 * @return the sample size of the variant or 0 if there is none
+	 */
+	synchronized int findLarger(String family, int sampleSize, boolean divisor) {
+		int[] sizes = families.get(family);
+		if (sizes == null) return 0;
+		int best = 0;
+		for (int s : sizes) {
+			if (s >= sampleSize || s <= best) continue;
+			if (divisor && sampleSize % s != 0) continue;
+			best = s;
+		}
+		return best;
+	}
+	
+	synchronized void clear() {
+		families.evictAll();
+	}
+}
@@ -38,7 +38,6 @@ public class BackgroundBinder extends GroupViewBinder<View> {
 	
 	@Override
 	public Cancelable load(View view, LoadRequest request) {
-		cancel(view);
 		setBackground(view, getLoadingDrawable());
 		return super.load(view, request);
 	}
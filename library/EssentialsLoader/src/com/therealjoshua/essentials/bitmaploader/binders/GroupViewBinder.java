@@ -22,12 +22,17 @@ import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.WeakHashMap;
 
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.Application;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Bundle;
 import android.view.View;
 
 import com.therealjoshua.essentials.bitmaploader.BitmapLoader;
@@ -36,6 +41,7 @@ import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Callback;
 import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Cancelable;
 import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorSource;
 import com.therealjoshua.essentials.bitmaploader.BitmapLoader.LoadRequest;
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
 import com.therealjoshua.essentials.bitmaploader.processors.BitmapProcessor;
 import com.therealjoshua.essentials.bitmaploader.processors.InverseProcessor;
 import com.therealjoshua.essentials.bitmaploader.processors.ResizeProcessor;
@@ -53,17 +59,25 @@ import com.therealjoshua.essentials.bitmaploader.Locator;
  * as 1 binder instance per group of views. For instance, in a ListAdapter you will only
  * need 1 binder and just call the load method for each item renderer in the list
  * 
+ * Every request loaded by the binder gets the binder's tag, unless it has its own, so 
+ * the binder's loads can be paused with {@link #pause()} while its screen is in the 
+ * background or its list is being flung. See {@link #bindToLifecycle(Activity)} and 
+ * {@link PauseOnScrollListener}.
+ * 
  * @param <T> Any type of view which the loaded image will be bound to
  */
 public class GroupViewBinder<T extends View> {
 	
 	private BitmapLoader loader;
 	private WeakHashMap<T, Cancelable> cancelables;
+	// the bitmap shown in each view, retained with the loader's pool
+	private WeakHashMap<T, Bitmap> boundBitmaps = new WeakHashMap<T, Bitmap>();
 	private Bitmap loadingBitmap;
 	private Bitmap faultBitmap;
 	private Context context;
 	private Resources res;
 	private HashMap<String, BitmapProcessor> processorsPool = new HashMap<String, BitmapProcessor>();
+	private Object tag = this;
 	
 	/**
 	 * Constructor which uses the default BitmapLoader object in the Locator. If you need a specific
@@ -82,6 +96,62 @@ public class GroupViewBinder<T extends View> {
 		cancelables = new WeakHashMap<T, BitmapLoader.Cancelable>();
 	}
 	
+	/**
+	 * Gets the BitmapLoader which loads the images
+	 * @return
+	 */
+	public BitmapLoader getBitmapLoader() {
+		return loader;
+	}
+	
+	/**
+	 * Gets the tag given to the requests loaded by this binder. The default is the binder.
+	 * 
+	 * @return Object
+	 */
+	public Object getTag() {
+		return tag;
+	}
+	
+	/**
+	 * Sets the tag given to the requests loaded by this binder. Binders which share a tag 
+	 * are paused and resumed together.
+	 * 
+	 * @param tag the tag, or null to use the binder
+	 */
+	public void setTag(Object tag) {
+		this.tag = tag == null ? this : tag;
+	}
+	
+	/**
+	 * Pauses the loads of this binder. They stay queued until {@link #resume()} is called.
+	 */
+	public void pause() {
+		loader.pause(tag);
+	}
+	
+	/**
+	 * Resumes the loads which were paused with {@link #pause()}
+	 */
+	public void resume() {
+		loader.resume(tag);
+	}
+	
+	/**
+	 * Pauses the loads of this binder while the activity is stopped and cancels them 
+	 * when it's destroyed. This needs API 14. On older versions it does nothing and 
+	 * returns false, so call {@link #pause()} and {@link #resume()} from the activity's 
+	 * onStop and onStart instead.
+	 * 
+	 * @param activity the activity which shows the views of this binder
+	 * @return true if the binder follows the activity
+	 */
+	public boolean bindToLifecycle(Activity activity) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) return false;
+		activity.getApplication().registerActivityLifecycleCallbacks(new LifecycleCallbacks(activity));
+		return true;
+	}
+	
 	/**
 	 * Gets the context passed to the constructor
 	 * @return
@@ -188,6 +258,8 @@ public class GroupViewBinder<T extends View> {
 			Cancelable c = entry.getValue();
 			if (c != null) c.cancel();
 		}
+		// the loads made with build(view, uri).load() for views which are gone
+		loader.cancel(tag);
 	}
 	
 	/**
@@ -306,14 +378,43 @@ public class GroupViewBinder<T extends View> {
 		return r;
 	}
 	
+	/**
+	 * Loads the request and associates it with the view. Any previous load for the view
+	 * is canceled. The new load is started before the old one is canceled so that rebinding 
+	 * a view to an image which is still loading reuses the running load.
+	 * 
+	 * If the loader has a BitmapPool, the Bitmap bound to the view is retained until the 
+	 * view is loaded again. Subclasses which keep showing the old Bitmap after that must 
+	 * retain it themselves.
+	 * 
+	 * @param view The view the loaded image is bound to
+	 * @param request The params used to make the load request
+	 * @return The Cancelable for the load
+	 */
 	public Cancelable load(T view, BitmapLoader.LoadRequest request) {
-		cancel(view);
+		Cancelable previous = cancelables.remove(view);
+		Bitmap previousBitmap = boundBitmaps.remove(view);
+		if (request.getTag() == null) request.setTag(tag);
 		request.setCallback(new ViewCallback(view, request.getCallback()));
 		Cancelable q = loader.load(request);
-		cancelables.put(view, q);
+		if (previous != null) previous.cancel();
+		if (q != null) cancelables.put(view, q);
+		// released after the load in case the same bitmap came right back from memory
+		if (previousBitmap != null) {
+			BitmapPool pool = loader.getBitmapPool();
+			if (pool != null) pool.release(previousBitmap);
+		}
 		return q;
 	}
 	
+	private void bind(T view, Bitmap bitmap) {
+		BitmapPool pool = loader.getBitmapPool();
+		if (pool == null) return;
+		pool.retain(bitmap);
+		Bitmap previous = boundBitmaps.put(view, bitmap);
+		if (previous != null) pool.release(previous);
+	}
+	
 	private class ViewCallback implements Callback {
 		private WeakReference<T> ref;
 		private Callback callback;
@@ -327,6 +428,7 @@ public class GroupViewBinder<T extends View> {
 		public void onSuccess(Bitmap bitmap, BitmapSource source, LoadRequest request) {
 			T view = ref.get();
 			if (view != null) {
+				bind(view, bitmap);
 				GroupViewBinder.this.onSuccess(view, bitmap, source, request);
 				if (callback != null) callback.onSuccess(bitmap, source, request);
 			}
@@ -341,4 +443,45 @@ public class GroupViewBinder<T extends View> {
 			}
 		}
 	}
-}
\ No newline at end of file
+	
+	@SuppressLint("NewApi")
+	private class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+		private Activity activity;
+		
+		private LifecycleCallbacks(Activity activity) {
+			this.activity = activity;
+		}
+		
+		@Override
+		public void onActivityStarted(Activity a) {
+			if (a == activity) resume();
+		}
+		
+		@Override
+		public void onActivityStopped(Activity a) {
+			if (a == activity) pause();
+		}
+		
+		@Override
+		public void onActivityDestroyed(Activity a) {
+			if (a != activity) return;
+			a.getApplication().unregisterActivityLifecycleCallbacks(this);
+			activity = null;
+			cancelAll();
+			// a paused tag is remembered until it's resumed
+			resume();
+		}
+		
+		@Override
+		public void onActivityCreated(Activity a, Bundle savedInstanceState) {}
+		
+		@Override
+		public void onActivityResumed(Activity a) {}
+		
+		@Override
+		public void onActivityPaused(Activity a) {}
+		
+		@Override
+		public void onActivitySaveInstanceState(Activity a, Bundle outState) {}
+	}
+}
@@ -44,7 +44,6 @@ public class ImageViewBinder extends GroupViewBinder<ImageView> {
 	
 	@Override
 	public Cancelable load(ImageView imageView, LoadRequest request) {
-		cancel(imageView);
 		if (imageView == null) return null;
 		imageView.setImageDrawable(getLoadingDrawable());
 		return super.load(imageView, request);
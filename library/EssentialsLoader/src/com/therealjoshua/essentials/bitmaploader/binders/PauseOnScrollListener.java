@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.binders;
+
+import android.widget.AbsListView;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader;
+
+/**
+ * Pauses the loads of a binder while a list is flung and resumes them once it settles 
+ * or the user touches it again. During a fling most rows are only on screen for a few 
+ * frames, so their loads would only fill the caches with images nobody sees. The rows 
+ * the fling stops on are loaded when they're bound, newest first.
+ * 
+ * Set it as the OnScrollListener of the AbsListView. Since a list has only one 
+ * OnScrollListener, another one such as a {@link Prefetcher} can be passed in and 
+ * gets all the calls as well.
+ */
+public class PauseOnScrollListener implements AbsListView.OnScrollListener {
+	
+	private final BitmapLoader loader;
+	private final Object tag;
+	private final AbsListView.OnScrollListener delegate;
+	private boolean paused = false;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param binder the binder whose loads are paused
+	 */
+	public PauseOnScrollListener(GroupViewBinder<?> binder) {
+		this(binder, null);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param binder the binder whose loads are paused
+	 * @param delegate a listener which gets the scroll calls as well, or null
+	 */
+	public PauseOnScrollListener(GroupViewBinder<?> binder, AbsListView.OnScrollListener delegate) {
+		this(binder.getBitmapLoader(), binder.getTag(), delegate);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param loader the loader which runs the loads
+	 * @param tag the tag of the requests which are paused
+	 * @param delegate a listener which gets the scroll calls as well, or null
+	 */
+	public PauseOnScrollListener(BitmapLoader loader, Object tag, AbsListView.OnScrollListener delegate) {
+		this.loader = loader;
+		this.tag = tag;
+		this.delegate = delegate;
+	}
+	
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		boolean fling = scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING;
+		if (fling != paused) {
+			paused = fling;
+			if (fling) loader.pause(tag);
+			else loader.resume(tag);
+		}
+		if (delegate != null) delegate.onScrollStateChanged(view, scrollState);
+	}
+	
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		if (delegate != null) delegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+	}
+}
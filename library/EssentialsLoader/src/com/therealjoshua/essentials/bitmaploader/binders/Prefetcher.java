@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.binders;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import android.graphics.Bitmap;
+import android.widget.AbsListView;
+
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.BitmapSource;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Callback;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Cancelable;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.ErrorSource;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.LoadRequest;
+import com.therealjoshua.essentials.bitmaploader.BitmapLoader.Priority;
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapLruCache;
+import com.therealjoshua.essentials.bitmaploader.cache.Cache;
+import com.therealjoshua.essentials.bitmaploader.cache.SizedCache;
+
+/**
+ * Loads the images for the rows just past the edge of the screen, in the direction
+ * the list is scrolling, so they're already in the cache by the time they're shown. 
+ * Tell the Prefetcher what's on screen by setting it as the OnScrollListener of an 
+ * AbsListView or by calling onVisibleRangeChanged from your own scroll listener.
+ * 
+ * The prefetches run with {@link Priority#PREFETCH} so they never hold up the loads of
+ * the rows on screen. When the scrolling reverses direction, the prefetches which haven't
+ * finished are canceled. Once a prefetched row scrolls on screen, the load from its
+ * binder joins the prefetch instead of starting again.
+ * 
+ * The prefetched images only take up part of the memory cache, set by 
+ * {@link #setMemoryBudget(float)}, so they don't push out the images on screen. Past the
+ * budget, images are put in the disk cache only. The budget is only used when the memory 
+ * cache is a {@link SizedCache} such as the {@link BitmapLruCache}. With any other memory
+ * cache every prefetch goes to disk only.
+ * 
+ * The prefetches get the binder's tag, or the one set with {@link #setTag(Object)}, so 
+ * pausing or canceling the binder's loads stops the prefetches too. After canceling the 
+ * binder's loads, call {@link #cancelAll()} so the canceled positions are prefetched again.
+ * 
+ * The requests come from a {@link RequestProvider}. For the prefetched image to be found
+ * by the binder, the request needs the same uri, options and processors as the one the 
+ * binder loads. The easiest way is to build both the same way:
+ * <pre>
+ * public LoadRequest getPrefetchRequest(int position) {
+ *     return binder.build(null, getItem(position).url).resizeTo(100, 100);
+ * }
+ * </pre>
+ * 
+ * The methods of this class must be called from the UI thread.
+ */
+public class Prefetcher implements AbsListView.OnScrollListener {
+	
+	/**
+	 * Builds the requests for the positions which are prefetched
+	 */
+	public static interface RequestProvider {
+		/**
+		 * @param position the adapter position
+		 * @return the request for the image at the position or null if there is none. The
+		 * 		callback and priority are set by the Prefetcher, and the tag if it has none.
+		 */
+		public LoadRequest getPrefetchRequest(int position);
+	}
+	
+	private BitmapLoader loader;
+	private GroupViewBinder<?> binder;
+	private RequestProvider provider;
+	private Object tag;
+	private int distance = 6;
+	private float memoryBudget = 0.25f;
+	
+	private int firstVisible = -1;
+	private int lastVisible = -1;
+	private boolean forward = true;
+	// the prefetches which are still loading
+	private HashMap<Integer, PrefetchCallback> pending = new HashMap<Integer, PrefetchCallback>();
+	// the prefetches which are done, and the bytes each added to the memory cache
+	private HashMap<Integer, Integer> loaded = new HashMap<Integer, Integer>();
+	private int averageBytes;
+	private int averageCount;
+	
+	/**
+	 * Constructor which loads with the same BitmapLoader as the binder
+	 * 
+	 * @param binder The binder which loads the images on screen
+	 * @param provider Builds the requests to prefetch
+	 */
+	public Prefetcher(GroupViewBinder<?> binder, RequestProvider provider) {
+		this(binder.getBitmapLoader(), provider);
+		this.binder = binder;
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param loader The BitmapLoader which runs the prefetches
+	 * @param provider Builds the requests to prefetch
+	 */
+	public Prefetcher(BitmapLoader loader, RequestProvider provider) {
+		this.loader = loader;
+		this.provider = provider;
+	}
+	
+	/**
+	 * Gets the tag given to the prefetch requests. Unless one was set, it's the tag of the
+	 * binder passed to the constructor.
+	 * 
+	 * @return the tag or null if there is none
+	 */
+	public Object getTag() {
+		if (tag != null) return tag;
+		return binder != null ? binder.getTag() : null;
+	}
+	
+	/**
+	 * Sets the tag given to the prefetch requests which don't have their own, so they're 
+	 * paused and canceled with {@link BitmapLoader#pause(Object)} and 
+	 * {@link BitmapLoader#cancel(Object)}
+	 * 
+	 * @param tag the tag, or null to use the binder's
+	 */
+	public void setTag(Object tag) {
+		this.tag = tag;
+	}
+	
+	/**
+	 * Gets how many positions past the screen are prefetched
+	 * 
+	 * @return int
+	 */
+	public int getDistance() {
+		return distance;
+	}
+	
+	/**
+	 * Sets how many positions past the screen are prefetched. The default is 6.
+	 * 
+	 * @param distance
+	 */
+	public void setDistance(int distance) {
+		this.distance = Math.max(0, distance);
+	}
+	
+	/**
+	 * Gets the part of the memory cache prefetched images may take up
+	 * 
+	 * @return float
+	 */
+	public float getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Sets the part of the memory cache prefetched images may take up, between 0 and 1. 
+	 * The images on screen stay in memory as long as they and the prefetched images 
+	 * fit in the cache together. The default is .25
+	 * 
+	 * @param percentOfMemCache
+	 */
+	public void setMemoryBudget(float percentOfMemCache) {
+		this.memoryBudget = Math.max(0, Math.min(1, percentOfMemCache));
+	}
+	
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+	}
+	
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		onVisibleRangeChanged(firstVisibleItem, visibleItemCount, totalItemCount);
+	}
+	
+	/**
+	 * Updates the prefetches for the positions on screen. The scroll direction is taken 
+	 * from how the range moved since the last call.
+	 * 
+	 * @param firstVisible the first adapter position on screen
+	 * @param visibleCount the number of positions on screen
+	 * @param totalCount the number of positions in the adapter
+	 */
+	public void onVisibleRangeChanged(int firstVisible, int visibleCount, int totalCount) {
+		if (visibleCount <= 0 || totalCount <= 0) return;
+		int lastVisible = firstVisible + visibleCount - 1;
+		if (firstVisible == this.firstVisible && lastVisible == this.lastVisible) return;
+		
+		if (this.firstVisible >= 0) {
+			boolean forward;
+			if (firstVisible != this.firstVisible) forward = firstVisible > this.firstVisible;
+			else forward = lastVisible > this.lastVisible;
+			if (forward != this.forward) {
+				cancelAll();
+				this.forward = forward;
+			}
+		}
+		this.firstVisible = firstVisible;
+		this.lastVisible = lastVisible;
+		
+		int start, end;
+		if (forward) {
+			start = lastVisible + 1;
+			end = Math.min(totalCount - 1, lastVisible + distance);
+		} else {
+			start = Math.max(0, firstVisible - distance);
+			end = firstVisible - 1;
+		}
+		trim(start, end);
+		
+		// nearest to the screen first so they are also the newest in the queue
+		if (forward) {
+			for (int i = start; i <= end; i++) prefetch(i);
+		} else {
+			for (int i = end; i >= start; i--) prefetch(i);
+		}
+	}
+	
+	/**
+	 * Cancels all the prefetches which haven't finished
+	 */
+	public void cancelAll() {
+		for (PrefetchCallback c : pending.values()) {
+			c.cancelable.cancel();
+		}
+		pending.clear();
+		loaded.clear();
+	}
+	
+	/*
+	 * drops everything outside of the window. Rows which came on screen are no longer 
+	 * prefetches but their loads are left running for the binder to join.
+	 */
+	private void trim(int start, int end) {
+		Iterator<Entry<Integer, PrefetchCallback>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<Integer, PrefetchCallback> e = it.next();
+			int position = e.getKey();
+			if (position >= start && position <= end) continue;
+			if (position < firstVisible || position > lastVisible) e.getValue().cancelable.cancel();
+			it.remove();
+		}
+		Iterator<Integer> positions = loaded.keySet().iterator();
+		while (positions.hasNext()) {
+			int position = positions.next();
+			if (position < start || position > end) positions.remove();
+		}
+	}
+	
+	private void prefetch(int position) {
+		if (pending.containsKey(position) || loaded.containsKey(position)) return;
+		LoadRequest request = provider.getPrefetchRequest(position);
+		if (request == null) {
+			loaded.put(position, 0);
+			return;
+		}
+		
+		boolean inMemory = fitsMemoryBudget();
+		PrefetchCallback callback = new PrefetchCallback(position, inMemory);
+		Object tag = getTag();
+		if (tag != null && request.getTag() == null) request.setTag(tag);
+		request.setPriority(Priority.PREFETCH);
+		request.setSkipMemoryCache(!inMemory);
+		request.setCallback(callback);
+		Cancelable cancelable = loader.load(request);
+		
+		// images in memory are called back before load returns
+		if (callback.done || cancelable == null) {
+			loaded.put(position, 0);
+		} else {
+			callback.cancelable = cancelable;
+			pending.put(position, callback);
+		}
+	}
+	
+	private boolean fitsMemoryBudget() {
+		Cache<String, Bitmap> memCache = loader.getMemCache();
+		if (!(memCache instanceof SizedCache)) return false;
+		long budget = (long)(((SizedCache)memCache).maxSize() * memoryBudget);
+		// until an image has loaded, guess that each fills an equal share of the budget
+		long estimate = averageCount > 0 ? averageBytes : budget / Math.max(1, distance);
+		
+		long used = 0;
+		for (Integer bytes : loaded.values()) used += bytes;
+		for (PrefetchCallback c : pending.values()) {
+			if (c.inMemory) used += estimate;
+		}
+		return used + estimate <= budget;
+	}
+	
+	private void onPrefetched(PrefetchCallback callback, int bytes) {
+		callback.done = true;
+		if (pending.get(callback.position) != callback) return;
+		pending.remove(callback.position);
+		loaded.put(callback.position, bytes);
+	}
+	
+	private class PrefetchCallback implements Callback {
+		private int position;
+		private boolean inMemory;
+		private Cancelable cancelable;
+		private boolean done = false;
+		
+		private PrefetchCallback(int position, boolean inMemory) {
+			this.position = position;
+			this.inMemory = inMemory;
+		}
+		
+		@Override
+		public void onSuccess(Bitmap bitmap, BitmapSource source, LoadRequest request) {
+			int bytes = 0;
+			if (source != BitmapSource.MEMORY) {
+				int size = BitmapLruCache.getBitmapSize(bitmap);
+				averageBytes = (averageBytes * averageCount + size) / (averageCount + 1);
+				averageCount = Math.min(averageCount + 1, 20);
+				if (inMemory) bytes = size;
+			}
+			onPrefetched(this, bytes);
+		}
+		
+		@Override
+		public void onError(Throwable error, ErrorSource source, LoadRequest request) {
+			// not retried until the position leaves the window and comes back
+			onPrefetched(this, 0);
+		}
+	}
+}
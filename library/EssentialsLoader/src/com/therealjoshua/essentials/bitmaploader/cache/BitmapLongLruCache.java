@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+import android.graphics.Bitmap;
+
+/**
+ * A memory cache of Bitmaps sized by their bytes, like {@link BitmapLruCache}, but 
+ * stored by the 64 bit keys from {@link KeyHasher}. When this is the memory cache of 
+ * a BitmapLoader, lookups from the UI thread go through the long key methods. The 
+ * String methods are still here for any other code which uses the cache, and the 
+ * String keys made by the BitmapLoader map to the same entries as the long keys.
+ */
+public class BitmapLongLruCache implements Cache<String, Bitmap>, LongKeyCache<Bitmap>, SizedCache, PooledCache {
+	
+	private LongLruCache<Bitmap> impl;
+	private volatile BitmapPool pool;
+	
+	public BitmapLongLruCache(float percentOfAvailableMemory) {
+		this((int)(Runtime.getRuntime().maxMemory() * percentOfAvailableMemory));
+	}
+	
+	public BitmapLongLruCache(int maxSize) {
+		impl = new LongLruCache<Bitmap>(maxSize) {
+			@Override
+			protected int sizeOf(long key, Bitmap value) {
+				return BitmapLruCache.getBitmapSize(value);
+			}
+			
+			@Override
+			protected void entryRemoved(boolean evicted, long key, Bitmap oldValue, Bitmap newValue) {
+				BitmapPool pool = BitmapLongLruCache.this.pool;
+				if (pool != null && oldValue != newValue) pool.offer(oldValue);
+			}
+		};
+	}
+	
+	public LongLruCache<Bitmap> getLruCache() {
+		return impl;
+	}
+	
+	@Override
+	public int size() {
+		return impl.size();
+	}
+	
+	@Override
+	public int maxSize() {
+		return impl.maxSize();
+	}
+	
+	/**
+	 * Sets the pool which the evicted Bitmaps are offered to. Null stops the pooling.
+	 */
+	@Override
+	public void setBitmapPool(BitmapPool pool) {
+		this.pool = pool;
+	}
+	
+	@Override
+	public BitmapPool getBitmapPool() {
+		return pool;
+	}
+	
+	@Override
+	public Bitmap get(long key) {
+		return impl.get(key);
+	}
+	
+	@Override
+	public void put(long key, Bitmap bitmap) {
+		if (bitmap == null) return;
+		impl.put(key, bitmap);
+	}
+	
+	@Override
+	public boolean hasObject(long key) {
+		Bitmap bm = impl.get(key);
+		return (bm != null && !bm.isRecycled());
+	}
+	
+	@Override
+	public Bitmap get(String id) {
+		if (id == null) return null;
+		return get(KeyHasher.parse(id));
+	}
+	
+	@Override
+	public void put(String id, Bitmap bitmap) {
+		if (id == null) return;
+		put(KeyHasher.parse(id), bitmap);
+	}
+	
+	@Override
+	public void clear() {
+		impl.evictAll();
+	}
+	
+	@Override
+	public boolean hasObject(String id) {
+		if (id == null) return false;
+		return hasObject(KeyHasher.parse(id));
+	}
+	
+}
@@ -21,48 +21,61 @@ import android.graphics.Bitmap;
 import android.os.Build;
 import android.support.v4.util.LruCache;
 
-public class BitmapLruCache extends LruCacheAdapter{
+public class BitmapLruCache extends LruCacheAdapter implements PooledCache {
 
-	private LruCache<String, Bitmap> impl;
-	
 	public BitmapLruCache(float percentOfAvailableMemory) {
 		super(new MyCache((int)(Runtime.getRuntime().maxMemory() * percentOfAvailableMemory)));
-		impl = getLruCache();
 	}
 	
 	public BitmapLruCache(int maxSize) {
 		super(new MyCache(maxSize));
-		impl = getLruCache();
 	}
 	
-	public int maxSize() {
-		return impl.maxSize();
+	/**
+	 * Sets the pool which the evicted Bitmaps are offered to. Null stops the pooling.
+	 */
+	@Override
+	public void setBitmapPool(BitmapPool pool) {
+		((MyCache)getLruCache()).pool = pool;
+	}
+	
+	@Override
+	public BitmapPool getBitmapPool() {
+		return ((MyCache)getLruCache()).pool;
 	}
 	
 	private static class MyCache extends LruCache<String, Bitmap> {
+		private volatile BitmapPool pool;
+		
 		public MyCache(int maxSize) {
 			super(maxSize);
 		}
 		
+		@Override
+		protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+			BitmapPool pool = this.pool;
+			if (pool != null && oldValue != newValue) pool.offer(oldValue);
+		}
+		
 		@Override
 		protected int sizeOf(String key, Bitmap value) {
 			if (value == null) return 0;
 			return getBitmapSize(value);
 		}
-		
-		/**
-	     * Get the size in bytes of a bitmap.
-	     * @param bitmap
-	     * @return size in bytes
-	     */
-	    @SuppressLint("NewApi")
-	    private int getBitmapSize(Bitmap bitmap) {
-	        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
-	            return bitmap.getByteCount();
-	        }
-	        // Pre HC-MR1
-	        return bitmap.getRowBytes() * bitmap.getHeight();
-	    }
 	}
 	
+	/**
+     * Get the size in bytes of a bitmap.
+     * @param bitmap
+     * @return size in bytes
+     */
+    @SuppressLint("NewApi")
+    public static int getBitmapSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return bitmap.getByteCount();
+        }
+        // Pre HC-MR1
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+	
 }
\ No newline at end of file
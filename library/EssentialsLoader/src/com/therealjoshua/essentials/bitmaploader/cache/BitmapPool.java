@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Holds on to Bitmaps nobody is using anymore so they can be decoded into or drawn on 
+ * again instead of allocating new ones. Every new Bitmap is garbage for the collector 
+ * sooner or later and, on a grid that's being flung, those collections are the pauses 
+ * that show up as dropped frames. 
+ * 
+ * Bitmaps come back into the pool when they are evicted from a memory cache which was 
+ * given the pool, and when the loader is done with the in between steps of a 
+ * BitmapProcessor chain. A Bitmap which is still shown in a view must not be reused, so 
+ * the binders {@link #retain(Bitmap)} each Bitmap while it is bound to a view and 
+ * {@link #release(Bitmap)} it after. An evicted Bitmap waits for its last release 
+ * before it goes into the pool. If your own code keeps Bitmaps from the loader, retain 
+ * them too or don't use a pool.
+ * 
+ * Reuse needs Honeycomb. Before KitKat, the decoder only reuses a Bitmap of exactly the 
+ * same size and config and only when inSampleSize is 1. From KitKat on, any Bitmap with 
+ * enough bytes is reused, so the pool is sorted by size classes of powers of 2.
+ * 
+ * The pool has a budget in bytes. Past the budget, the oldest Bitmaps are recycled.
+ */
+public class BitmapPool implements SizedCache {
+	
+	private final int maxSize;
+	private int size;
+	// the pooled bitmaps in the order they came in, mapped to their bucket
+	private final LinkedHashMap<Bitmap, Long> order = new LinkedHashMap<Bitmap, Long>();
+	private final HashMap<Long, ArrayList<Bitmap>> buckets = new HashMap<Long, ArrayList<Bitmap>>();
+	// Bitmap doesn't override equals so these are by identity
+	private final WeakHashMap<Bitmap, Integer> references = new WeakHashMap<Bitmap, Integer>();
+	private final WeakHashMap<Bitmap, Boolean> waitingForRelease = new WeakHashMap<Bitmap, Boolean>();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	
+	private int hitCount;
+	private int missCount;
+	private int putCount;
+	private int evictionCount;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param percentOfAvailableMemory the part of the heap the pooled Bitmaps may take up
+	 */
+	public BitmapPool(float percentOfAvailableMemory) {
+		this((int)(Runtime.getRuntime().maxMemory() * percentOfAvailableMemory));
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxSize the bytes the pooled Bitmaps may take up
+	 */
+	public BitmapPool(int maxSize) {
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Gets a Bitmap from the pool which has the given size and config. The pixels are 
+	 * whatever was left in it, so call eraseColor if it won't be drawn over completely. 
+	 * 
+	 * @return a mutable Bitmap or null if none fit
+	 */
+	@SuppressLint("NewApi")
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		if (config == null) config = Bitmap.Config.ARGB_8888;
+		Bitmap bitmap = null;
+		if (Build.VERSION.SDK_INT >= 19) {
+			int bytes = width * height * getBytesPerPixel(config);
+			long sizeClass = getSizeClass(bytes);
+			bitmap = take(sizeClass, bytes);
+			// one class up wastes at most 4 times the memory
+			if (bitmap == null) bitmap = take(sizeClass + 1, bytes);
+			if (bitmap != null) reconfigure(bitmap, width, height, config);
+		} else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			bitmap = take(getExactKey(width, height, config), 0);
+		}
+		
+		if (bitmap == null) missCount++;
+		else hitCount++;
+		return bitmap;
+	}
+	
+	/**
+	 * Gets a Bitmap from the pool, or creates one if none fit, which is cleared to transparent.
+	 * 
+	 * @return a mutable Bitmap 
+	 */
+	public Bitmap getCleared(int width, int height, Bitmap.Config config) {
+		if (config == null) config = Bitmap.Config.ARGB_8888;
+		Bitmap bitmap = get(width, height, config);
+		if (bitmap == null) return Bitmap.createBitmap(width, height, config);
+		bitmap.eraseColor(0);
+		return bitmap;
+	}
+	
+	/**
+	 * Sets up the options so the decode reuses a Bitmap from the pool. inMutable is
+	 * turned on so the decoded Bitmap can join the pool later. If the decode throws an
+	 * IllegalArgumentException, the pooled Bitmap didn't fit after all. Give it back 
+	 * with {@link #put(Bitmap)}, set inBitmap to null and decode again.
+	 * 
+	 * @param options the options which will be used to decode
+	 * @param width the width of the encoded image before inSampleSize
+	 * @param height the height of the encoded image before inSampleSize
+	 */
+	@SuppressLint("NewApi")
+	public void prepareDecode(BitmapFactory.Options options, int width, int height) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) return;
+		if (options == null || options.inJustDecodeBounds || options.inPurgeable) return;
+		options.inMutable = true;
+		if (options.inBitmap != null || width <= 0 || height <= 0) return;
+		
+		int sampleSize = Math.max(1, options.inSampleSize);
+		if (sampleSize > 1 && Build.VERSION.SDK_INT < 19) return;
+		// some decoders round up when sampling, so plan for the bigger size
+		int sampledWidth = (width + sampleSize - 1) / sampleSize;
+		int sampledHeight = (height + sampleSize - 1) / sampleSize;
+		options.inBitmap = get(sampledWidth, sampledHeight, options.inPreferredConfig);
+	}
+	
+	/**
+	 * Puts a Bitmap which nobody else holds in the pool. Bitmaps which can't be reused,
+	 * or which don't fit in the budget, are recycled instead. Either way, the caller must 
+	 * not use the Bitmap after this.
+	 * 
+	 * @param bitmap
+	 */
+	@SuppressLint("NewApi")
+	public void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) return;
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || !bitmap.isMutable()) {
+			bitmap.recycle();
+			return;
+		}
+		
+		ArrayList<Bitmap> evicted = new ArrayList<Bitmap>();
+		synchronized (this) {
+			if (order.containsKey(bitmap)) return;
+			int bytes = getPooledSize(bitmap);
+			if (bytes > maxSize) {
+				evicted.add(bitmap);
+			} else {
+				long key;
+				if (Build.VERSION.SDK_INT >= 19) key = getSizeClass(bytes);
+				else key = getExactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+				ArrayList<Bitmap> bucket = buckets.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<Bitmap>();
+					buckets.put(key, bucket);
+				}
+				bucket.add(bitmap);
+				order.put(bitmap, key);
+				size += bytes;
+				putCount++;
+				trimToSize(maxSize, evicted);
+			}
+		}
+		for (Bitmap b : evicted) b.recycle();
+	}
+	
+	/**
+	 * Puts a Bitmap in the pool once nobody retains it. This is called by the memory caches 
+	 * when they evict. The Bitmap is looked at on the UI thread, after anything which 
+	 * was binding it at the time has had its chance to retain it.
+	 * 
+	 * @param bitmap
+	 */
+	public void offer(final Bitmap bitmap) {
+		if (bitmap == null) return;
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				boolean put;
+				synchronized (BitmapPool.this) {
+					put = !references.containsKey(bitmap);
+					if (!put) waitingForRelease.put(bitmap, Boolean.TRUE);
+				}
+				if (put) put(bitmap);
+			}
+		});
+	}
+	
+	/**
+	 * Marks the Bitmap as in use, such as shown in a view, so that it won't go into 
+	 * the pool when it's evicted. Each retain needs a matching release.
+	 * 
+	 * @param bitmap
+	 */
+	public synchronized void retain(Bitmap bitmap) {
+		if (bitmap == null) return;
+		Integer count = references.get(bitmap);
+		references.put(bitmap, count == null ? 1 : count + 1);
+	}
+	
+	/**
+	 * Marks the Bitmap as no longer used by whoever retained it. If it's been evicted 
+	 * and this was the last release, it goes into the pool.
+	 * 
+	 * @param bitmap
+	 */
+	public void release(Bitmap bitmap) {
+		if (bitmap == null) return;
+		synchronized (this) {
+			Integer count = references.get(bitmap);
+			if (count == null) return;
+			if (count > 1) {
+				references.put(bitmap, count - 1);
+				return;
+			}
+			references.remove(bitmap);
+			if (waitingForRelease.remove(bitmap) == null) return;
+		}
+		put(bitmap);
+	}
+	
+	/**
+	 * Recycles all the pooled Bitmaps
+	 */
+	public void clear() {
+		ArrayList<Bitmap> evicted = new ArrayList<Bitmap>();
+		synchronized (this) {
+			trimToSize(-1, evicted);
+		}
+		for (Bitmap b : evicted) b.recycle();
+	}
+	
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+	
+	@Override
+	public int maxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Gets the number of pooled Bitmaps
+	 * @return
+	 */
+	public synchronized int count() {
+		return order.size();
+	}
+	
+	/**
+	 * Gets the number of times get found a Bitmap
+	 * @return
+	 */
+	public synchronized int hitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Gets the number of times get found nothing
+	 * @return
+	 */
+	public synchronized int missCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Gets the number of Bitmaps which have gone into the pool
+	 * @return
+	 */
+	public synchronized int putCount() {
+		return putCount;
+	}
+	
+	/**
+	 * Gets the number of Bitmaps recycled to stay under the budget
+	 * @return
+	 */
+	public synchronized int evictionCount() {
+		return evictionCount;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		int accesses = hitCount + missCount;
+		int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+		return String.format("BitmapPool[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+				size, maxSize, hitCount, missCount, hitPercent);
+	}
+	
+	private Bitmap take(long key, int minBytes) {
+		ArrayList<Bitmap> bucket = buckets.get(key);
+		if (bucket == null) return null;
+		// newest first since it's the least likely to have been paged out
+		for (int i = bucket.size() - 1; i >= 0; i--) {
+			Bitmap b = bucket.get(i);
+			int bytes = getPooledSize(b);
+			if (bytes < minBytes) continue;
+			bucket.remove(i);
+			if (bucket.isEmpty()) buckets.remove(key);
+			order.remove(b);
+			size -= bytes;
+			return b;
+		}
+		return null;
+	}
+	
+	private void trimToSize(int maxSize, ArrayList<Bitmap> evicted) {
+		Iterator<Entry<Bitmap, Long>> it = order.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry<Bitmap, Long> e = it.next();
+			Bitmap b = e.getKey();
+			ArrayList<Bitmap> bucket = buckets.get(e.getValue());
+			bucket.remove(b);
+			if (bucket.isEmpty()) buckets.remove(e.getValue());
+			it.remove();
+			size -= getPooledSize(b);
+			evictionCount++;
+			evicted.add(b);
+		}
+	}
+	
+	private static int getPooledSize(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= 19) {
+			return getAllocationByteCount(bitmap);
+		}
+		return BitmapLruCache.getBitmapSize(bitmap);
+	}
+	
+	/*
+	 * KitKat lets a Bitmap take any size and config which fits in its allocation
+	 */
+	@TargetApi(19)
+	private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+		bitmap.reconfigure(width, height, config);
+	}
+	
+	@TargetApi(19)
+	private static int getAllocationByteCount(Bitmap bitmap) {
+		return bitmap.getAllocationByteCount();
+	}
+	
+	private static long getSizeClass(int bytes) {
+		// the power of 2 at or above the bytes
+		return 32 - Integer.numberOfLeadingZeros(Math.max(0, bytes - 1));
+	}
+	
+	private static long getExactKey(int width, int height, Bitmap.Config config) {
+		int ordinal = config == null ? 0xF : config.ordinal();
+		return ((long)width << 32) | ((long)height << 4) | ordinal;
+	}
+	
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8: return 1;
+			case RGB_565: 
+			case ARGB_4444: return 2;
+			default: return 4;
+		}
+	}
+}
@@ -16,8 +16,10 @@
 
 package com.therealjoshua.essentials.bitmaploader.cache;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,12 +34,14 @@ import android.os.Looper;
 
 import com.therealjoshua.essentials.logger.Log;
 import com.therealjoshua.essentials.bitmaploader.BitmapOptionsDecoder;
+import com.therealjoshua.essentials.bitmaploader.ImageHeaderParser;
 import com.therealjoshua.essentials.bitmaploader.cache.DiskLruCache.Editor;
 import com.therealjoshua.essentials.bitmaploader.cache.DiskLruCache.Snapshot;
 
-public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsDecoder {
+public class DiskLruCacheFacade implements Cache<String, Bitmap>, StreamCache, BitmapOptionsDecoder, PooledCache {
 	
 	private static final String TAG = DiskLruCacheFacade.class.getSimpleName();
+	private static final int HEADER_BUFFER_SIZE = 8 * 1024;
 	private DiskLruCache cache;
 	private File directory;
 	private int appVersion;
@@ -51,6 +55,7 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
 	
 	private BitmapFactory.Options options;
 	private Rect outPadding;
+	private volatile BitmapPool pool;
 	
 	public DiskLruCacheFacade(File directory, long maxSize) {
 		this.directory = directory;
@@ -110,6 +115,19 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
 		compressQuality = 70;
 	}
 	
+	/**
+	 * Sets the pool which the Bitmaps are decoded into. Null stops the pooling.
+	 */
+	@Override
+	public void setBitmapPool(BitmapPool pool) {
+		this.pool = pool;
+	}
+	
+	@Override
+	public BitmapPool getBitmapPool() {
+		return pool;
+	}
+	
 	@Override
 	public void setOptions(Options options, Rect outPadding) {
 		this.options = options;
@@ -133,7 +151,13 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
                 	inSampleSize = options.inSampleSize;
                 	options.inSampleSize = 1;
                 }
-                Bitmap bitmap = BitmapFactory.decodeStream(in, outPadding, options);
+                BitmapPool pool = this.pool;
+                Bitmap bitmap;
+                if (pool != null && options != null && !options.inJustDecodeBounds) {
+                	bitmap = decodePooled(key, in, pool);
+                } else {
+                	bitmap = BitmapFactory.decodeStream(in, outPadding, options);
+                }
                 // restore the inSampleSize back to the original
                 if (options != null) options.inSampleSize = inSampleSize;
                 return bitmap;
@@ -152,6 +176,48 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
 		return null;
 	}
 	
+	/*
+	 * Decodes into a Bitmap from the pool. The header is read from the stream for the size 
+	 * and the entry is opened again to decode, since a JPEG with a large EXIF or XMP block 
+	 * has its size further in than a mark can be trusted to reach. If the pooled Bitmap 
+	 * turns out not to fit, the entry is read again without it.
+	 */
+	private Bitmap decodePooled(String key, InputStream in, BitmapPool pool) throws IOException {
+		ImageHeaderParser.Header header = ImageHeaderParser.parse(new BufferedInputStream(in, HEADER_BUFFER_SIZE));
+		if (header != null) pool.prepareDecode(options, header.getWidth(), header.getHeight());
+		
+		Bitmap reuse = options.inBitmap;
+		try {
+			Bitmap bitmap = decodeEntry(key);
+			if (bitmap == null && reuse != null) pool.put(reuse);
+			return bitmap;
+		} catch (IllegalArgumentException e) {
+			if (reuse == null) throw e;
+		} finally {
+			options.inBitmap = null;
+		}
+		
+		pool.put(reuse);
+		return decodeEntry(key);
+	}
+	
+	/*
+	 * Decodes the entry from a snapshot of its own
+	 * 
+	 * @return the Bitmap or null if the entry was removed or can't be decoded
+	 */
+	private Bitmap decodeEntry(String key) throws IOException {
+		Snapshot snapshot = cache.get(key);
+		if (snapshot == null) return null;
+		InputStream in = snapshot.getInputStream(0);
+		try {
+			return BitmapFactory.decodeStream(in, outPadding, options);
+		} finally {
+			closeQuietly(in);
+			closeQuietly(snapshot);
+		}
+	}
+	
 	@Override
 	public void put(String key, Bitmap bitmap) {
 		waitForInit();
@@ -174,7 +240,8 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
             Log.w(TAG, "Failed to put bitmap on disk.", e);
         } finally {
             closeQuietly(out);
-//            quietlyAbortUnlessCommitted(editor);
+            // a failed write would otherwise hold the entry open for good
+            if (editor != null) editor.abortUnlessCommitted();
         }
         long d = System.currentTimeMillis() - s;
 //        Log.d(TAG, "time to write to disk: " + d);
@@ -199,7 +266,7 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
 	public boolean hasObject(String key) {
 		waitForInit();
 		if (!isOkay()) return false;
-		Snapshot shot;
+		Snapshot shot = null;
 		try {
 			shot = cache.get(key);
 			return shot != null;
@@ -207,9 +274,91 @@ public class DiskLruCacheFacade implements Cache<String, Bitmap>, BitmapOptionsD
 			return false;
 		} catch (IOException e) {
 			return false;
+		} finally {
+			// the snapshot holds the file open
+			closeQuietly(shot);
+		}
+	}
+	
+	@Override
+	public InputStream getStream(String key) {
+		waitForInit();
+		if (!isOkay()) return null;
+		try {
+			final Snapshot snapshot = cache.get(key);
+			if (snapshot == null) return null;
+			return new FilterInputStream(snapshot.getInputStream(0)) {
+				@Override
+				public void close() throws IOException {
+					snapshot.close();
+				}
+			};
+		} catch (IllegalStateException e) {
+			return null;
+		} catch (IOException e) {
+			Log.w(TAG, "IO Error getting stream from disk", e);
+			return null;
 		}
 	}
 	
+	@Override
+	public StreamEditor editStream(String key) {
+		waitForInit();
+		if (!isOkay()) return null;
+		final Editor editor;
+		try {
+			editor = cache.edit(key);
+		} catch (IllegalStateException e) {
+			return null;
+		} catch (IOException e) {
+			Log.w(TAG, "IO Error editing stream on disk", e);
+			return null;
+		}
+		if (editor == null) return null;
+		return new StreamEditor() {
+			@Override
+			public OutputStream getOutputStream() throws IOException {
+				return editor.newOutputStream(0);
+			}
+			
+			@Override
+			public void commit() throws IOException {
+				editor.commit();
+			}
+			
+			@Override
+			public void abort() {
+				editor.abortUnlessCommitted();
+			}
+		};
+	}
+	
+	@Override
+	public boolean putBytes(String key, byte[] data, int offset, int length) {
+		StreamEditor editor = editStream(key);
+		if (editor == null) return false;
+		OutputStream out = null;
+		try {
+			out = editor.getOutputStream();
+			out.write(data, offset, length);
+			out.close();
+			out = null;
+			editor.commit();
+			return true;
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to put bytes on disk.", e);
+			return false;
+		} finally {
+			closeQuietly(out);
+			editor.abort();
+		}
+	}
+	
+	@Override
+	public boolean hasStream(String key) {
+		return hasObject(key);
+	}
+	
 	private boolean isOkay() {
 		return isReady && !hasIOError && cache != null && !cache.isClosed();
 	}
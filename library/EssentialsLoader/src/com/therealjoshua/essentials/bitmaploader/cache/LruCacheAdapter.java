@@ -19,7 +19,7 @@ package com.therealjoshua.essentials.bitmaploader.cache;
 import android.graphics.Bitmap;
 import android.support.v4.util.LruCache;
 
-public class LruCacheAdapter implements Cache<String, Bitmap> {
+public class LruCacheAdapter implements Cache<String, Bitmap>, SizedCache {
 	
 	private LruCache<String, Bitmap> lruCache;
 	
@@ -31,6 +31,16 @@ public class LruCacheAdapter implements Cache<String, Bitmap> {
 		return lruCache;
 	}
 	
+	@Override
+	public int size() {
+		return lruCache.size();
+	}
+	
+	@Override
+	public int maxSize() {
+		return lruCache.maxSize();
+	}
+	
 	@Override
 	public Bitmap get(String id) {
 		return lruCache.get(id);
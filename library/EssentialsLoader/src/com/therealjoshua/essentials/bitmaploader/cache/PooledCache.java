@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+/**
+ * A cache which works with a {@link BitmapPool}. Memory caches give the Bitmaps they 
+ * evict to the pool and disk caches decode into Bitmaps from the pool.
+ */
+public interface PooledCache {
+	
+	public void setBitmapPool(BitmapPool pool);
+	public BitmapPool getBitmapPool();
+	
+}
@@ -0,0 +1,23 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import android.graphics.Matrix;
+
+/**
+ * A BitmapProcessor whose whole effect is drawing its input through a Matrix. The 
+ * loader folds a run of these into a single Matrix and draws the input once, instead 
+ * of making a full copy of the image for each one. Any other processor between them 
+ * ends the run.
+ */
+public interface AffineProcessor extends BitmapProcessor {
+	/**
+	 * Gets the transform this processor applies to an input of the size. The output is 
+	 * sized to fit the transformed input, which is moved so it starts at 0,0, the same 
+	 * as {@link Transforms#transform(android.graphics.Bitmap, Matrix, boolean, 
+	 * com.therealjoshua.essentials.bitmaploader.cache.BitmapPool)}.
+	 * 
+	 * @param width the width of the input
+	 * @param height the height of the input
+	 * @return a new Matrix which the caller is free to change
+	 */
+	public Matrix getMatrix(int width, int height);
+}
@@ -2,7 +2,13 @@ package com.therealjoshua.essentials.bitmaploader.processors;
 
 import android.graphics.Bitmap;
 
-public interface BitmapProcessor {
+import com.therealjoshua.essentials.bitmaploader.cache.Identifiable;
+
+/**
+ * Changes the image after it's decoded and before it's cached. The id goes into the 
+ * cache key, so two processors with the same id must give the same result.
+ */
+public interface BitmapProcessor extends Identifiable {
 	public String getId();
 	public Bitmap process(Bitmap in);
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.StackBlurKernel;
+
+/**
+ * Blurs the image with a {@link StackBlurKernel}. The time it takes doesn't grow with 
+ * the radius, but a blurred image looks the same from a smaller decode, so a sample
+ * size or a resize before it saves the most.
+ */
+public class BlurProcessor extends PixelProcessor {
+	
+	private StackBlurKernel kernel;
+	
+	/**
+	 * @param radius 1 to {@link StackBlurKernel#MAX_RADIUS}
+	 */
+	public BlurProcessor(int radius) {
+		kernel = new StackBlurKernel(radius);
+	}
+	
+	public int getRadius() {
+		return kernel.getRadius();
+	}
+	
+	@Override
+	public String getId() {
+		return "blur" + kernel.getRadius();
+	}
+	
+	@Override
+	public Cost getCost() {
+		// two passes with a stack of pixels each
+		return Cost.EXPENSIVE;
+	}
+	
+	@Override
+	protected PixelKernel getKernel() {
+		return kernel;
+	}
+	
+}
@@ -0,0 +1,40 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ColorMatrixKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelKernel;
+
+public class BrightnessContrastProcessor extends PixelProcessor {
+	
+	private ColorMatrixKernel kernel;
+	private float brightness;
+	private float contrast;
+	
+	/**
+	 * @param brightness -255 to 255 with 0 for no change
+	 * @param contrast 0 for all grey, 1 for no change and above 1 for more contrast
+	 */
+	public BrightnessContrastProcessor(float brightness, float contrast) {
+		kernel = ColorMatrixKernel.brightnessContrast(brightness, contrast);
+		this.brightness = brightness;
+		this.contrast = contrast;
+	}
+	
+	public float getBrightness() {
+		return brightness;
+	}
+	
+	public float getContrast() {
+		return contrast;
+	}
+	
+	@Override
+	public String getId() {
+		return "bc" + brightness + "x" + contrast;
+	}
+	
+	@Override
+	protected PixelKernel getKernel() {
+		return kernel;
+	}
+	
+}
@@ -0,0 +1,35 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import java.util.Arrays;
+
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ColorMatrixKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelKernel;
+
+/**
+ * Transforms the colors with a matrix laid out the same as android.graphics.ColorMatrix. 
+ * Pass ColorMatrix.getArray() to use one.
+ */
+public class ColorMatrixProcessor extends PixelProcessor {
+	
+	private ColorMatrixKernel kernel;
+	private String id;
+	
+	/**
+	 * @param matrix the 20 values of the 4x5 matrix. They're copied.
+	 */
+	public ColorMatrixProcessor(float[] matrix) {
+		kernel = new ColorMatrixKernel(matrix);
+		id = "cm" + Arrays.toString(Arrays.copyOf(matrix, 20));
+	}
+	
+	@Override
+	public String getId() {
+		return id;
+	}
+	
+	@Override
+	protected PixelKernel getKernel() {
+		return kernel;
+	}
+	
+}
@@ -0,0 +1,22 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+/**
+ * A BitmapProcessor which says how costly it is to run. The loader takes the cost of 
+ * the most costly processor of a request to decide where the processed image is cached, 
+ * since an image which is cheap to make again from the unprocessed one isn't worth a 
+ * compress and a place in the disk cache. A processor which isn't a CostedProcessor 
+ * counts as {@link Cost#EXPENSIVE}.
+ */
+public interface CostedProcessor extends BitmapProcessor {
+	
+	public static enum Cost {
+		/** About the cost of copying the image, such as a rotate, a flip or a resize */
+		CHEAP,
+		/** A pass over every pixel, such as a color matrix */
+		MODERATE,
+		/** More than decoding the image again, such as a blur */
+		EXPENSIVE
+	}
+	
+	public Cost getCost();
+}
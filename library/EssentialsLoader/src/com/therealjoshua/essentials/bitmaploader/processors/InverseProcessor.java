@@ -3,7 +3,9 @@ package com.therealjoshua.essentials.bitmaploader.processors;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 
-public class InverseProcessor implements BitmapProcessor {
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+public class InverseProcessor implements PooledBitmapProcessor, AffineProcessor, CostedProcessor {
 	
 	public InverseProcessor() {
 		
@@ -16,12 +18,25 @@ public class InverseProcessor implements BitmapProcessor {
 
 	@Override
 	public Bitmap process(Bitmap in) {
+		return process(in, null);
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in, BitmapPool pool) {
+		return Transforms.transform(in, getMatrix(in.getWidth(), in.getHeight()), false, pool);
+	}
+	
+	@Override
+	public Cost getCost() {
+		return Cost.CHEAP;
+	}
+	
+	@Override
+	public Matrix getMatrix(int width, int height) {
 		Matrix matrix = new Matrix();
 		matrix.setScale(-1, 1);
-		matrix.postTranslate(in.getWidth(), 0);
-		Bitmap result = Bitmap.createBitmap(in, 0, 0, in.getWidth(), in.getHeight(), matrix, false);
-		if (result != in) in.recycle();
-		return result;
+		matrix.postTranslate(width, 0);
+		return matrix;
 	}
 	
 }
\ No newline at end of file
@@ -3,7 +3,9 @@ package com.therealjoshua.essentials.bitmaploader.processors;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 
-public class MatrixProcessor implements BitmapProcessor {
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+public class MatrixProcessor implements PooledBitmapProcessor, AffineProcessor, CostedProcessor {
 	private Matrix matrix;
 	
 	public MatrixProcessor(Matrix matrix) {
@@ -17,9 +19,22 @@ public class MatrixProcessor implements BitmapProcessor {
 
 	@Override
 	public Bitmap process(Bitmap in) {
-		Bitmap result = Bitmap.createBitmap(in, 0, 0, in.getWidth(), in.getHeight(), matrix, false);
-		if (result != in) in.recycle();
-		return result;
+		return process(in, null);
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in, BitmapPool pool) {
+		return Transforms.transform(in, matrix, false, pool);
+	}
+	
+	@Override
+	public Cost getCost() {
+		return Cost.CHEAP;
+	}
+	
+	@Override
+	public Matrix getMatrix(int width, int height) {
+		return new Matrix(matrix);
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ForkJoinPixelRunner;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelRunner;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelSurface;
+
+/**
+ * A processor which runs a {@link PixelKernel} over the pixels of the Bitmap. The pixels 
+ * are copied out in strips into a buffer which is reused, processed and copied back, so 
+ * no Canvas or Paint is needed and only a strip of the image is held as ints. From API 
+ * 21 the strips are spread over a ForkJoinPool with a thread for each processor. Before 
+ * that they run on the calling thread.
+ * 
+ * A mutable ARGB_8888 input is processed in place. Any other input is copied into a new
+ * ARGB_8888 Bitmap by the first pass.
+ */
+public abstract class PixelProcessor implements PooledBitmapProcessor, CostedProcessor {
+	
+	private static PixelRunner runner;
+	
+	/**
+	 * Gets the kernel which is run over the pixels. It's shared by the threads running 
+	 * the strips.
+	 */
+	protected abstract PixelKernel getKernel();
+	
+	/**
+	 * Gets the runner shared by all the PixelProcessors
+	 */
+	public static synchronized PixelRunner getRunner() {
+		if (runner == null) {
+			// ForkJoinPool came with API 21
+			runner = Build.VERSION.SDK_INT >= 21 ? new ForkJoinPixelRunner() : new PixelRunner();
+		}
+		return runner;
+	}
+	
+	/**
+	 * Sets the runner shared by all the PixelProcessors, such as to run the strips on a 
+	 * pool of your own
+	 */
+	public static synchronized void setRunner(PixelRunner runner) {
+		PixelProcessor.runner = runner;
+	}
+	
+	/**
+	 * A single pass over the pixels is {@link CostedProcessor.Cost#MODERATE}
+	 */
+	@Override
+	public Cost getCost() {
+		return Cost.MODERATE;
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in) {
+		return process(in, null);
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in, BitmapPool pool) {
+		Bitmap out = in;
+		if (!in.isMutable() || in.getConfig() != Bitmap.Config.ARGB_8888) {
+			out = Transforms.obtain(in.getWidth(), in.getHeight(), Bitmap.Config.ARGB_8888, pool);
+		}
+		getRunner().run(getKernel(), new BitmapSurface(in, out));
+		if (out != in) Transforms.dispose(in, pool);
+		return out;
+	}
+	
+	/*
+	 * Reads from the input until the first pass is written to the output
+	 */
+	private static class BitmapSurface implements PixelSurface {
+		private volatile Bitmap source;
+		private final Bitmap target;
+		
+		private BitmapSurface(Bitmap source, Bitmap target) {
+			this.source = source;
+			this.target = target;
+		}
+		
+		@Override
+		public int getWidth() {
+			return target.getWidth();
+		}
+		
+		@Override
+		public int getHeight() {
+			return target.getHeight();
+		}
+		
+		@Override
+		public void read(int[] buffer, int x, int y, int width, int height) {
+			source.getPixels(buffer, 0, width, x, y, width, height);
+		}
+		
+		@Override
+		public void write(int[] buffer, int x, int y, int width, int height) {
+			target.setPixels(buffer, 0, width, x, y, width, height);
+		}
+		
+		@Override
+		public void onPassFinished() {
+			source = target;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import android.graphics.Bitmap;
+
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+/**
+ * A BitmapProcessor which takes its output Bitmap from a pool and gives its input back 
+ * to the pool when done with it. The loader calls this in place of process(Bitmap) 
+ * when it has a BitmapPool.
+ */
+public interface PooledBitmapProcessor extends BitmapProcessor {
+	/**
+	 * @param in the Bitmap to process. It belongs to the processor from here on, so 
+	 * 		if it isn't returned, hand it to the pool.
+	 * @param pool the pool to take the output from
+	 * @return the processed Bitmap
+	 */
+	public Bitmap process(Bitmap in, BitmapPool pool);
+}
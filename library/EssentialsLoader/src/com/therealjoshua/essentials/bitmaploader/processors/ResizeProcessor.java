@@ -1,8 +1,11 @@
 package com.therealjoshua.essentials.bitmaploader.processors;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 
-public class ResizeProcessor implements BitmapProcessor {
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+public class ResizeProcessor implements PooledBitmapProcessor, AffineProcessor, CostedProcessor {
 	private int width, height;
 	
 	public ResizeProcessor(int width, int height) {
@@ -25,8 +28,23 @@ public class ResizeProcessor implements BitmapProcessor {
 
 	@Override
 	public Bitmap process(Bitmap in) {
-		Bitmap out = Bitmap.createScaledBitmap(in, width, height, false);
-		if (out != in) in.recycle();
-		return out;
+		return process(in, null);
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in, BitmapPool pool) {
+		return Transforms.scale(in, width, height, false, pool);
+	}
+	
+	@Override
+	public Cost getCost() {
+		return Cost.CHEAP;
+	}
+	
+	@Override
+	public Matrix getMatrix(int width, int height) {
+		Matrix matrix = new Matrix();
+		matrix.setScale((float)this.width / width, (float)this.height / height);
+		return matrix;
 	}
 }
\ No newline at end of file
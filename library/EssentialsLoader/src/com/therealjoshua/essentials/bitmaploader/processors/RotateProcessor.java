@@ -3,7 +3,9 @@ package com.therealjoshua.essentials.bitmaploader.processors;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 
-public class RotateProcessor implements BitmapProcessor {
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+public class RotateProcessor implements PooledBitmapProcessor, AffineProcessor, CostedProcessor {
 	private int rotateDegrees;
 	
 	public RotateProcessor(int rotateDegrees) {
@@ -21,11 +23,24 @@ public class RotateProcessor implements BitmapProcessor {
 
 	@Override
 	public Bitmap process(Bitmap in) {
+		return process(in, null);
+	}
+	
+	@Override
+	public Bitmap process(Bitmap in, BitmapPool pool) {
+		return Transforms.transform(in, getMatrix(in.getWidth(), in.getHeight()), false, pool);
+	}
+	
+	@Override
+	public Cost getCost() {
+		return Cost.CHEAP;
+	}
+	
+	@Override
+	public Matrix getMatrix(int width, int height) {
 		Matrix matrix = new Matrix();
-		matrix.postRotate(rotateDegrees, in.getWidth()/2, in.getHeight()/2);
-		Bitmap result = Bitmap.createBitmap(in, 0, 0, in.getWidth(), in.getHeight(), matrix, false);
-		if (result != in) in.recycle();
-		return result;
+		matrix.postRotate(rotateDegrees, width/2, height/2);
+		return matrix;
 	}
 
 }
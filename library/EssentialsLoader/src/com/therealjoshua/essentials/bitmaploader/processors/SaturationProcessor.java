@@ -1,22 +1,15 @@
 package com.therealjoshua.essentials.bitmaploader.processors;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.ColorMatrixKernel;
+import com.therealjoshua.essentials.bitmaploader.core.pixels.PixelKernel;
 
-public class SaturationProcessor implements BitmapProcessor {
+public class SaturationProcessor extends PixelProcessor {
 
-	private ColorMatrix colorMatrix;
-	private Paint paint;
+	private ColorMatrixKernel kernel;
 	private int saturation;
 	
 	public SaturationProcessor(int saturation) {
-		colorMatrix = new ColorMatrix();
-		colorMatrix.setSaturation(saturation);
-		paint = new Paint();
-		paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+		kernel = ColorMatrixKernel.saturation(saturation);
 		this.saturation = saturation;
 	}
 	
@@ -28,15 +21,10 @@ public class SaturationProcessor implements BitmapProcessor {
 	public String getId() {
 		return "saturation"+saturation;
 	}
-
+	
 	@Override
-	public Bitmap process(Bitmap in) {
-		Bitmap out = Bitmap.createBitmap(in.getWidth(), in.getHeight(), Bitmap.Config.ARGB_8888);
-		Canvas canvas = new Canvas(out);
-		canvas.drawBitmap(in, 0, 0, paint);
-		in.recycle();
-		
-		return out;
+	protected PixelKernel getKernel() {
+		return kernel;
 	}
 	
-}
\ No newline at end of file
+}
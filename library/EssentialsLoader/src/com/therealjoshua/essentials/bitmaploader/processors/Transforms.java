@@ -0,0 +1,144 @@
+package com.therealjoshua.essentials.bitmaploader.processors;
+
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.therealjoshua.essentials.bitmaploader.cache.BitmapPool;
+
+/**
+ * Helpers for processors which draw their input onto a new Bitmap. The output comes 
+ * from the pool when there is one and the input goes back to it. With no pool, the 
+ * output is allocated and the input recycled, the same as the processors always did.
+ */
+public final class Transforms {
+	
+	private Transforms() {
+	}
+	
+	/**
+	 * Gets a Bitmap cleared to transparent from the pool or creates one
+	 */
+	public static Bitmap obtain(int width, int height, Bitmap.Config config, BitmapPool pool) {
+		if (config == null) config = Bitmap.Config.ARGB_8888;
+		if (pool == null) return Bitmap.createBitmap(width, height, config);
+		return pool.getCleared(width, height, config);
+	}
+	
+	/**
+	 * Gives the Bitmap to the pool or recycles it
+	 */
+	public static void dispose(Bitmap bitmap, BitmapPool pool) {
+		if (pool != null) pool.put(bitmap);
+		else bitmap.recycle();
+	}
+	
+	/**
+	 * Draws the input through the matrix onto a Bitmap sized to fit the result, like 
+	 * Bitmap.createBitmap(in, 0, 0, width, height, matrix, filter).
+	 * 
+	 * @return the input itself when the matrix is the identity or else the new Bitmap
+	 */
+	public static Bitmap transform(Bitmap in, Matrix matrix, boolean filter, BitmapPool pool) {
+		if (matrix == null || matrix.isIdentity()) return in;
+		RectF bounds = new RectF(0, 0, in.getWidth(), in.getHeight());
+		matrix.mapRect(bounds);
+		int width = Math.max(1, Math.round(bounds.width()));
+		int height = Math.max(1, Math.round(bounds.height()));
+		Matrix m = new Matrix(matrix);
+		m.postTranslate(-bounds.left, -bounds.top);
+		return transform(in, m, width, height, filter, pool);
+	}
+	
+	/**
+	 * Draws the input through the matrix onto a Bitmap of the size. The matrix is 
+	 * expected to map the input into the bounds of the output.
+	 * 
+	 * @return the input itself when the matrix is the identity and the size is the 
+	 * 		input's or else the new Bitmap
+	 */
+	public static Bitmap transform(Bitmap in, Matrix matrix, int width, int height, boolean filter, BitmapPool pool) {
+		if (matrix.isIdentity() && in.getWidth() == width && in.getHeight() == height) return in;
+		
+		// a rotation which isn't a multiple of 90 leaves transparent corners
+		boolean rectStaysRect = matrix.rectStaysRect();
+		Bitmap.Config config = rectStaysRect ? in.getConfig() : Bitmap.Config.ARGB_8888;
+		Bitmap out = obtain(width, height, config, pool);
+		
+		Paint paint = null;
+		if (filter || !rectStaysRect) {
+			paint = new Paint(Paint.FILTER_BITMAP_FLAG | (rectStaysRect ? 0 : Paint.ANTI_ALIAS_FLAG));
+		}
+		Canvas canvas = new Canvas(out);
+		canvas.concat(matrix);
+		canvas.drawBitmap(in, 0, 0, paint);
+		dispose(in, pool);
+		return out;
+	}
+	
+	/**
+	 * Draws the input onto a Bitmap of the same size and config. The input is left as it is.
+	 */
+	public static Bitmap copy(Bitmap in, BitmapPool pool) {
+		return copy(in, in.getWidth(), in.getHeight(), pool);
+	}
+	
+	/**
+	 * Draws the input stretched onto a Bitmap of the size with the same config. The 
+	 * input is left as it is.
+	 */
+	public static Bitmap copy(Bitmap in, int width, int height, BitmapPool pool) {
+		Bitmap out = obtain(width, height, in.getConfig(), pool);
+		Canvas canvas = new Canvas(out);
+		if (in.getWidth() == width && in.getHeight() == height) {
+			canvas.drawBitmap(in, 0, 0, null);
+		} else {
+			canvas.drawBitmap(in, null, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+		}
+		return out;
+	}
+	
+	/**
+	 * Folds the processors into one transform and draws the input through it once. The 
+	 * output is the size the processors would have made one after the other.
+	 * 
+	 * @return the input itself when the processors cancel out or else the new Bitmap
+	 */
+	public static Bitmap transform(Bitmap in, List<? extends AffineProcessor> processors, BitmapPool pool) {
+		Matrix total = new Matrix();
+		RectF bounds = new RectF();
+		int width = in.getWidth();
+		int height = in.getHeight();
+		for (AffineProcessor p : processors) {
+			Matrix m = p.getMatrix(width, height);
+			bounds.set(0, 0, width, height);
+			m.mapRect(bounds);
+			// each processor's output starts at 0,0
+			m.postTranslate(-bounds.left, -bounds.top);
+			total.postConcat(m);
+			width = Math.max(1, Math.round(bounds.width()));
+			height = Math.max(1, Math.round(bounds.height()));
+		}
+		return transform(in, total, width, height, false, pool);
+	}
+	
+	/**
+	 * Draws the input stretched to the size, like Bitmap.createScaledBitmap
+	 * 
+	 * @return the input itself when it's already the size or else the new Bitmap
+	 */
+	public static Bitmap scale(Bitmap in, int width, int height, boolean filter, BitmapPool pool) {
+		if (in.getWidth() == width && in.getHeight() == height) return in;
+		Bitmap out = obtain(width, height, in.getConfig(), pool);
+		Canvas canvas = new Canvas(out);
+		Paint paint = filter ? new Paint(Paint.FILTER_BITMAP_FLAG) : null;
+		canvas.drawBitmap(in, null, new Rect(0, 0, width, height), paint);
+		dispose(in, pool);
+		return out;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers a request for an image with an error status such as 404 
+ * or 503. The status tells a file which doesn't exist apart from a server which is having
+ * trouble.
+ */
+public class HttpException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final int responseCode;
+	private final String url;
+	
+	public HttpException(int responseCode, String url) {
+		super("HTTP " + responseCode + " for " + url);
+		this.responseCode = responseCode;
+		this.url = url;
+	}
+	
+	/**
+	 * Gets the HTTP status the server answered with
+	 * 
+	 * @return the status such as 404
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+	
+	/**
+	 * Gets the url which was requested
+	 * 
+	 * @return the url
+	 */
+	public String getUrl() {
+		return url;
+	}
+	
+	/**
+	 * Whether asking again won't help. These are the 4xx statuses other than a timeout
+	 * or too many requests.
+	 * 
+	 * @return true if the request itself is at fault
+	 */
+	public boolean isClientError() {
+		return responseCode >= 400 && responseCode < 500 
+				&& responseCode != 408 && responseCode != 429;
+	}
+}
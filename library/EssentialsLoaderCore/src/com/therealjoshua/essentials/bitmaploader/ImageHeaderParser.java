@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the width, height and MIME type of an image from the first bytes of its file 
+ * without decoding it. JPEG, PNG, GIF and WebP (lossy, lossless and extended) are 
+ * understood. Only as much of the stream is read as is needed to get to the size, 
+ * which for most images is well under 1 KB. A JPEG with a large EXIF thumbnail may need
+ * more since the size comes after the thumbnail.
+ * 
+ * This class has no Android dependencies.
+ */
+public class ImageHeaderParser {
+	
+	/**
+	 * The size and type of an image
+	 */
+	public static class Header {
+		private final int width;
+		private final int height;
+		private final String mimeType;
+		
+		public Header(int width, int height, String mimeType) {
+			this.width = width;
+			this.height = height;
+			this.mimeType = mimeType;
+		}
+		
+		public int getWidth() {
+			return width;
+		}
+		
+		public int getHeight() {
+			return height;
+		}
+		
+		public String getMimeType() {
+			return mimeType;
+		}
+		
+		@Override
+		public String toString() {
+			return mimeType + " " + width + "x" + height;
+		}
+	}
+	
+	private final InputStream in;
+	
+	private ImageHeaderParser(InputStream in) {
+		this.in = in;
+	}
+	
+	/**
+	 * Reads the header from the start of the stream. The stream is left part way through 
+	 * and is not closed.
+	 * 
+	 * @param in The stream positioned at the first byte of the image
+	 * @return The Header or null if the format isn't known, the header is broken or
+	 * 		the stream ended before the size was found
+	 * @throws IOException if the stream can't be read
+	 */
+	public static Header parse(InputStream in) throws IOException {
+		try {
+			return new ImageHeaderParser(in).parse();
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+	
+	private Header parse() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		if (b0 == 0xFF && b1 == 0xD8) return parseJpeg();
+		if (b0 == 0x89 && b1 == 'P') return parsePng();
+		if (b0 == 'G' && b1 == 'I') return parseGif();
+		if (b0 == 'R' && b1 == 'I') return parseWebp();
+		return null;
+	}
+	
+	private Header parseJpeg() throws IOException {
+		while (true) {
+			if (readByte() != 0xFF) return null;
+			int marker = readByte();
+			// any number of 0xFF can pad before the marker
+			while (marker == 0xFF) marker = readByte();
+			
+			// markers without a length
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue;
+			// end of image or start of the compressed data with no frame found
+			if (marker == 0xD9 || marker == 0xDA) return null;
+			
+			int length = readUInt16BE();
+			if (length < 2) return null;
+			// SOF0 through SOF15, other than DHT, JPG and DAC which share the range
+			if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+				skip(1); // precision
+				int height = readUInt16BE();
+				int width = readUInt16BE();
+				return header(width, height, "image/jpeg");
+			}
+			skip(length - 2);
+		}
+	}
+	
+	private Header parsePng() throws IOException {
+		// the rest of the signature
+		if (readByte() != 'N' || readByte() != 'G' || readByte() != 0x0D || readByte() != 0x0A 
+				|| readByte() != 0x1A || readByte() != 0x0A) return null;
+		skip(4); // chunk length
+		if (!readTag("IHDR")) return null;
+		int width = readInt32BE();
+		int height = readInt32BE();
+		return header(width, height, "image/png");
+	}
+	
+	private Header parseGif() throws IOException {
+		if (readByte() != 'F' || readByte() != '8') return null;
+		int version = readByte();
+		if ((version != '7' && version != '9') || readByte() != 'a') return null;
+		int width = readUInt16LE();
+		int height = readUInt16LE();
+		return header(width, height, "image/gif");
+	}
+	
+	private Header parseWebp() throws IOException {
+		if (readByte() != 'F' || readByte() != 'F') return null;
+		skip(4); // file size
+		if (!readTag("WEBP")) return null;
+		
+		int c0 = readByte(), c1 = readByte(), c2 = readByte(), c3 = readByte();
+		if (c0 != 'V' || c1 != 'P' || c2 != '8') return null;
+		skip(4); // chunk size
+		
+		if (c3 == ' ') {
+			// lossy: a 3 byte frame tag, the start code, then 14 bit sizes
+			skip(3);
+			if (readByte() != 0x9D || readByte() != 0x01 || readByte() != 0x2A) return null;
+			int width = readUInt16LE() & 0x3FFF;
+			int height = readUInt16LE() & 0x3FFF;
+			return header(width, height, "image/webp");
+		}
+		if (c3 == 'L') {
+			// lossless: the signature then 14 bit sizes minus 1 packed into 28 bits
+			if (readByte() != 0x2F) return null;
+			int bits = readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+			int width = (bits & 0x3FFF) + 1;
+			int height = ((bits >> 14) & 0x3FFF) + 1;
+			return header(width, height, "image/webp");
+		}
+		if (c3 == 'X') {
+			// extended: flags, then 24 bit canvas sizes minus 1
+			skip(4);
+			int width = readUInt24LE() + 1;
+			int height = readUInt24LE() + 1;
+			return header(width, height, "image/webp");
+		}
+		return null;
+	}
+	
+	private static Header header(int width, int height, String mimeType) {
+		if (width <= 0 || height <= 0) return null;
+		return new Header(width, height, mimeType);
+	}
+	
+	private boolean readTag(String tag) throws IOException {
+		for (int i = 0; i < tag.length(); i++) {
+			if (readByte() != tag.charAt(i)) return false;
+		}
+		return true;
+	}
+	
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b == -1) throw new EOFException();
+		return b;
+	}
+	
+	private int readUInt16BE() throws IOException {
+		return (readByte() << 8) | readByte();
+	}
+	
+	private int readUInt16LE() throws IOException {
+		return readByte() | (readByte() << 8);
+	}
+	
+	private int readUInt24LE() throws IOException {
+		return readByte() | (readByte() << 8) | (readByte() << 16);
+	}
+	
+	private int readInt32BE() throws IOException {
+		return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+	}
+	
+	private void skip(long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				// skip may give up early, so fall back to reading
+				readByte();
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+}
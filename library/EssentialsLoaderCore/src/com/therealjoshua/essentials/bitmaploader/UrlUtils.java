@@ -2,8 +2,6 @@ package com.therealjoshua.essentials.bitmaploader;
 
 import java.util.Locale;
 
-import android.text.TextUtils;
-
 // ported: https://android.googlesource.com/platform/libcore/+/android-4.2.2_r1/luni/src/main/java/libcore/net/url/UrlUtils.java
 
 public final class UrlUtils {
@@ -75,7 +73,7 @@ public final class UrlUtils {
      * run together like {@code http://android.comindex.html}.
      */
     public static String authoritySafePath(String authority, String path) {
-        if (authority != null && !TextUtils.isEmpty(authority) && !TextUtils.isEmpty(path) && !path.startsWith("/")) {
+        if (authority != null && authority.length() > 0 && path != null && path.length() > 0 && !path.startsWith("/")) {
             return "/" + path;
         }
         return path;
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+import java.util.List;
+
+/**
+ * Builds the 64 bit keys used by the caches. The hash is FNV-1a over every char followed
+ * by a final mix so that keys which differ in a single char still differ in about half
+ * of their bits. With 64 bits, a cache holding a million images has roughly a one in
+ * 30 million chance of a single collision, where the old 32 bit keys were all but
+ * certain to collide at that size.
+ *
+ * Build a key by starting with {@link #START} and chaining the hash calls:
+ * <pre>
+ * long key = KeyHasher.START;
+ * key = KeyHasher.hash(key, uri);
+ * key = KeyHasher.hash(key, sampleSize);
+ * key = KeyHasher.finish(key);
+ * </pre>
+ *
+ * The keys of the loader's requests are built with {@link #hashBase}, {@link #hashIds} 
+ * and {@link #hashFamily}, so a key made off the device is the same as the one the 
+ * BitmapLoader makes for the same request.
+ *
+ * The String form of a key is always 16 lower case hex chars, which is a legal
+ * {@link DiskLruCache} key.
+ */
+public final class KeyHasher {
+
+	/** The value to start hashing from */
+	public static final long START = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private KeyHasher() {
+	}
+
+	/**
+	 * Hashes the chars of the string onto the key. A null string hashes differently
+	 * from an empty one.
+	 */
+	public static long hash(long key, CharSequence value) {
+		if (value == null) return hash(key, -1);
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			key = (key ^ (c & 0xff)) * PRIME;
+			key = (key ^ (c >>> 8)) * PRIME;
+		}
+		// the length keeps "ab" + "c" from hashing the same as "a" + "bc"
+		return hash(key, length);
+	}
+
+	/**
+	 * Hashes the int onto the key
+	 */
+	public static long hash(long key, int value) {
+		key = (key ^ (value & 0xff)) * PRIME;
+		key = (key ^ ((value >>> 8) & 0xff)) * PRIME;
+		key = (key ^ ((value >>> 16) & 0xff)) * PRIME;
+		key = (key ^ (value >>> 24)) * PRIME;
+		return key;
+	}
+
+	/**
+	 * Mixes the bits of the key. Call this once all of the values have been hashed.
+	 */
+	public static long finish(long key) {
+		// the 64 bit finalizer from MurmurHash3
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/**
+	 * Hashes what an image depends on before any processors run. Finished, it's the key
+	 * of the image with no processors. The processors of a request go on with 
+	 * {@link #hashIds(long, List)}.
+	 * 
+	 * @param uri
+	 * @param sampleSize
+	 * @param config the ordinal of the Bitmap.Config
+	 * @param targetWidth
+	 * @param targetHeight
+	 * @param scaleMode the ordinal of the ScaleMode, or -1 if the image isn't fit to a 
+	 * 		target size, in which case the target size is left out
+	 * @return the unfinished key
+	 */
+	public static long hashBase(String uri, int sampleSize, int config, int targetWidth, 
+			int targetHeight, int scaleMode) {
+		long key = hash(START, uri);
+		key = hash(key, sampleSize);
+		key = hash(key, config);
+		if (scaleMode >= 0) {
+			key = hash(key, targetWidth);
+			key = hash(key, targetHeight);
+			key = hash(key, scaleMode);
+		}
+		return key;
+	}
+	
+	/**
+	 * Hashes the number of parts and then the id of each, in order, onto the key
+	 */
+	public static long hashIds(long key, List<? extends Identifiable> parts) {
+		int size = parts.size();
+		key = hash(key, size);
+		for (int i = 0; i < size; i++) {
+			key = hash(key, parts.get(i).getId());
+		}
+		return key;
+	}
+	
+	/**
+	 * Hashes what every sample size of an image shares, the uri and the config
+	 * 
+	 * @param uri
+	 * @param config the ordinal of the Bitmap.Config
+	 * @return the unfinished key
+	 */
+	public static long hashFamily(String uri, int config) {
+		return hash(hash(START, uri), config);
+	}
+
+	/**
+	 * Hashes a whole string into a finished key
+	 */
+	public static long hashKey(CharSequence value) {
+		return finish(hash(START, value));
+	}
+
+	/**
+	 * Gets the key the downloaded file of the uri is kept under in a disk cache. It depends
+	 * on nothing but the uri, so every size and variant of the image shares the file.
+	 */
+	public static String sourceKey(String uri) {
+		// the extra int keeps it apart from a key with no options
+		return toString(finish(hash(hash(START, uri), -1)));
+	}
+	
+	/**
+	 * Gets the 16 char hex form of the key
+	 */
+	public static String toString(long key) {
+		char[] chars = new char[16];
+		for (int i = 15; i >= 0; i--) {
+			chars[i] = HEX[(int)(key & 0xf)];
+			key >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Gets the key back from the String made by {@link #toString(long)}. Any other
+	 * String is hashed into a key so that every String maps to a key.
+	 */
+	public static long parse(String value) {
+		if (value.length() != 16) return hashKey(value);
+		long key = 0;
+		for (int i = 0; i < 16; i++) {
+			char c = value.charAt(i);
+			int digit;
+			if (c >= '0' && c <= '9') digit = c - '0';
+			else if (c >= 'a' && c <= 'f') digit = c - 'a' + 10;
+			else return hashKey(value);
+			key = (key << 4) | digit;
+		}
+		return key;
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+/**
+ * A cache which can also be looked up by the 64 bit keys made by {@link KeyHasher}. 
+ * The BitmapLoader uses these methods in place of the String ones whenever its memory 
+ * cache implements this interface, which saves building and hashing a String 
+ * on each lookup from the UI thread.
+ */
+public interface LongKeyCache<V> {
+	
+	public V get(long key);
+	public void put(long key, V value);
+	public boolean hasObject(long key);
+	
+}
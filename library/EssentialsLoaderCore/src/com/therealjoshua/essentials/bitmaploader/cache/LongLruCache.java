@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+/**
+ * The same as android.support.v4.util.LruCache except the keys are primitive longs. 
+ * No Long is boxed and no String is hashed on a lookup, so it's cheap to call from 
+ * the UI thread. The keys made by {@link KeyHasher} are already well mixed and are 
+ * used as the hash code as is.
+ *
+ * This class is thread safe.
+ */
+public class LongLruCache<V> {
+	
+	private Entry<V>[] table;
+	// head.after is the least recently used entry and head.before the most recent
+	private final Entry<V> head;
+	private int count;
+	private int size;
+	private int maxSize;
+	
+	private int putCount;
+	private int evictionCount;
+	private int hitCount;
+	private int missCount;
+	
+	/**
+	 * @param maxSize for caches that do not override {@link #sizeOf}, this is
+	 *     the maximum number of entries in the cache. For all other caches,
+	 *     this is the maximum sum of the sizes of the entries in this cache.
+	 */
+	public LongLruCache(int maxSize) {
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+		this.maxSize = maxSize;
+		table = newTable(16);
+		head = new Entry<V>(0, null, null);
+		head.before = head.after = head;
+	}
+	
+	/**
+	 * Returns the value for key if it exists in the cache. If a value was returned, 
+	 * it is moved to the head of the queue. This returns null if a value is not cached.
+	 */
+	public synchronized final V get(long key) {
+		Entry<V> e = find(key);
+		if (e == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		e.unlink();
+		e.linkBefore(head);
+		return e.value;
+	}
+	
+	/**
+	 * Caches value for key. The value is moved to the head of the queue.
+	 *
+	 * @return the previous value mapped by key.
+	 */
+	public final V put(long key, V value) {
+		if (value == null) throw new NullPointerException("value == null");
+		
+		V previous = null;
+		synchronized (this) {
+			putCount++;
+			size += safeSizeOf(key, value);
+			Entry<V> e = find(key);
+			if (e != null) {
+				previous = e.value;
+				size -= safeSizeOf(key, previous);
+				e.value = value;
+				e.unlink();
+				e.linkBefore(head);
+			} else {
+				insert(key, value);
+			}
+		}
+		
+		if (previous != null) {
+			entryRemoved(false, key, previous, value);
+		}
+		
+		trimToSize(maxSize);
+		return previous;
+	}
+	
+	/**
+	 * Removes the entry for key if it exists.
+	 *
+	 * @return the previous value mapped by key.
+	 */
+	public final V remove(long key) {
+		V previous = null;
+		synchronized (this) {
+			Entry<V> e = removeEntry(key);
+			if (e != null) {
+				previous = e.value;
+				size -= safeSizeOf(key, previous);
+			}
+		}
+		
+		if (previous != null) {
+			entryRemoved(false, key, previous, null);
+		}
+		return previous;
+	}
+	
+	/**
+	 * @param maxSize the maximum size of the cache before returning. May be -1
+	 *     to evict even 0-sized elements.
+	 */
+	public void trimToSize(int maxSize) {
+		while (true) {
+			long key;
+			V value;
+			synchronized (this) {
+				if (size < 0 || (count == 0 && size != 0)) {
+					throw new IllegalStateException(getClass().getName()
+							+ ".sizeOf() is reporting inconsistent results!");
+				}
+				
+				if (size <= maxSize || count == 0) {
+					break;
+				}
+				
+				Entry<V> eldest = head.after;
+				key = eldest.key;
+				value = eldest.value;
+				removeEntry(key);
+				size -= safeSizeOf(key, value);
+				evictionCount++;
+			}
+			
+			entryRemoved(true, key, value, null);
+		}
+	}
+	
+	/**
+	 * Called for entries that have been evicted or removed. This method is
+	 * invoked when a value is evicted to make space, removed by a call to
+	 * {@link #remove}, or replaced by a call to {@link #put}. The default
+	 * implementation does nothing.
+	 *
+	 * <p>The method is called without synchronization: other threads may
+	 * access the cache while this method is executing.
+	 *
+	 * @param evicted true if the entry is being removed to make space, false
+	 *     if the removal was caused by a {@link #put} or {@link #remove}.
+	 * @param newValue the new value for key, if it exists. If non-null,
+	 *     this removal was caused by a {@link #put}. Otherwise it was caused by
+	 *     an eviction or a {@link #remove}.
+	 */
+	protected void entryRemoved(boolean evicted, long key, V oldValue, V newValue) {
+	}
+	
+	/**
+	 * Returns the size of the entry for key and value in user-defined units.
+	 * The default implementation returns 1 so that size is the number of
+	 * entries and max size is the maximum number of entries.
+	 *
+	 * <p>An entry's size must not change while it is in the cache.
+	 */
+	protected int sizeOf(long key, V value) {
+		return 1;
+	}
+	
+	private int safeSizeOf(long key, V value) {
+		int result = sizeOf(key, value);
+		if (result < 0) {
+			throw new IllegalStateException("Negative size: " + key + "=" + value);
+		}
+		return result;
+	}
+	
+	/**
+	 * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+	 */
+	public final void evictAll() {
+		trimToSize(-1); // -1 will evict 0-sized elements
+	}
+	
+	/**
+	 * For caches that do not override {@link #sizeOf}, this returns the number
+	 * of entries in the cache. For all other caches, this returns the sum of
+	 * the sizes of the entries in this cache.
+	 */
+	public synchronized final int size() {
+		return size;
+	}
+	
+	/**
+	 * For caches that do not override {@link #sizeOf}, this returns the maximum
+	 * number of entries in the cache. For all other caches, this returns the
+	 * maximum sum of the sizes of the entries in this cache.
+	 */
+	public synchronized final int maxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Returns the number of entries in the cache.
+	 */
+	public synchronized final int count() {
+		return count;
+	}
+	
+	/**
+	 * Returns the number of times {@link #get} returned a value.
+	 */
+	public synchronized final int hitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Returns the number of times {@link #get} returned null.
+	 */
+	public synchronized final int missCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Returns the number of times {@link #put} was called.
+	 */
+	public synchronized final int putCount() {
+		return putCount;
+	}
+	
+	/**
+	 * Returns the number of values that have been evicted.
+	 */
+	public synchronized final int evictionCount() {
+		return evictionCount;
+	}
+	
+	@Override
+	public synchronized final String toString() {
+		int accesses = hitCount + missCount;
+		int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+		return String.format("LongLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+				maxSize, hitCount, missCount, hitPercent);
+	}
+	
+	private int indexFor(long key, int length) {
+		return (int)(key ^ (key >>> 32)) & (length - 1);
+	}
+	
+	private Entry<V> find(long key) {
+		Entry<V> e = table[indexFor(key, table.length)];
+		while (e != null && e.key != key) e = e.next;
+		return e;
+	}
+	
+	private void insert(long key, V value) {
+		if (count >= table.length * 3 / 4) resize();
+		int i = indexFor(key, table.length);
+		Entry<V> e = new Entry<V>(key, value, table[i]);
+		table[i] = e;
+		e.linkBefore(head);
+		count++;
+	}
+	
+	private Entry<V> removeEntry(long key) {
+		int i = indexFor(key, table.length);
+		Entry<V> prev = null;
+		Entry<V> e = table[i];
+		while (e != null && e.key != key) {
+			prev = e;
+			e = e.next;
+		}
+		if (e == null) return null;
+		if (prev == null) table[i] = e.next;
+		else prev.next = e.next;
+		e.unlink();
+		count--;
+		return e;
+	}
+	
+	private void resize() {
+		Entry<V>[] old = table;
+		Entry<V>[] resized = newTable(old.length * 2);
+		for (Entry<V> e : old) {
+			while (e != null) {
+				Entry<V> next = e.next;
+				int i = indexFor(e.key, resized.length);
+				e.next = resized[i];
+				resized[i] = e;
+				e = next;
+			}
+		}
+		table = resized;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <V> Entry<V>[] newTable(int length) {
+		// a generic array can't be made directly, but every entry in it is an Entry<V>
+		return (Entry<V>[])new Entry<?>[length];
+	}
+	
+	private static class Entry<V> {
+		private final long key;
+		private V value;
+		// the next entry in the same bucket
+		private Entry<V> next;
+		// the neighbours in the access order
+		private Entry<V> before;
+		private Entry<V> after;
+		
+		private Entry(long key, V value, Entry<V> next) {
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+		
+		private void unlink() {
+			before.after = after;
+			after.before = before;
+		}
+		
+		private void linkBefore(Entry<V> e) {
+			after = e;
+			before = e.before;
+			before.after = this;
+			e.before = this;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A cache of raw bytes, such as the image files exactly as they were downloaded. Where 
+ * {@link Cache} stores decoded Bitmaps, this stores streams so that writing an entry is 
+ * only a copy of the bytes and nothing is decoded or compressed again.
+ * 
+ * These methods do IO, so don't call them from the UI thread.
+ */
+public interface StreamCache {
+	
+	/**
+	 * Writes a single entry. Write the bytes to the output stream and then commit 
+	 * to publish the entry or abort to throw it away. The stream must not be used after 
+	 * either.
+	 */
+	public static interface StreamEditor {
+		public OutputStream getOutputStream() throws IOException;
+		public void commit() throws IOException;
+		public void abort();
+	}
+	
+	/**
+	 * Opens the entry for reading
+	 * 
+	 * @param key
+	 * @return the stream, which must be closed, or null if there is no entry
+	 */
+	public InputStream getStream(String key);
+	
+	/**
+	 * Starts writing the entry
+	 * 
+	 * @param key
+	 * @return the editor or null if the entry is already being written or the cache isn't 
+	 * 		available
+	 */
+	public StreamEditor editStream(String key);
+	
+	/**
+	 * Writes the bytes as the entry in one go
+	 * 
+	 * @return true if the entry was written
+	 */
+	public boolean putBytes(String key, byte[] data, int offset, int length);
+	
+	public boolean hasStream(String key);
+	
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.therealjoshua.essentials.bitmaploader.HttpException;
+import com.therealjoshua.essentials.bitmaploader.UrlUtils;
+
+/**
+ * Tracks the failed requests per host so that when a server goes down the requests for 
+ * all of its files fail fast, instead of each url making its own failing connection first.
+ * 
+ * Each host is in one of three states:
+ * <ul>
+ * <li>closed - requests go through. A number of failures in a row opens the host.</li>
+ * <li>open - requests fail right away until the backoff has passed. The backoff doubles 
+ * 		each time the host opens again, up to a maximum, and is jittered so that a lot of 
+ * 		clients don't all come back at the same moment.</li>
+ * <li>half open - a single trial request goes through. If it works the host is closed, 
+ * 		otherwise it opens again with a longer backoff.</li>
+ * </ul>
+ * 
+ * A 4xx response means the file itself is the problem, so only that url fails fast and 
+ * it doesn't count against the host. Timeouts, refused connections and 5xx responses count 
+ * against the host. 
+ * 
+ * Time is read from {@link #now()}, which subclasses can replace, such as with a clock 
+ * which keeps counting while the device sleeps.
+ */
+public class CircuitBreaker {
+	
+	/**
+	 * Why the requests for a url or a host fail fast
+	 */
+	public static interface Failure {
+		public Throwable getError();
+		
+		/**
+		 * @return false once requests may go through again
+		 */
+		public boolean isValid();
+	}
+	
+	private static final int CLOSED = 0;
+	private static final int OPEN = 1;
+	private static final int HALF_OPEN = 2;
+	
+	// how long a trial request may take before another one is let through
+	private static final long TRIAL_TIMEOUT = 30 * 1000;
+	
+	private final Map<String, UrlFailure> urlFailures = new LruMap<String, UrlFailure>(200);
+	private final Map<String, Host> hosts = new LruMap<String, Host>(64);
+	private final Random random = new Random();
+	private int failureThreshold = 3;
+	private long baseBackoff = 2 * 1000;
+	private long maxBackoff = 5 * 60 * 1000;
+	private long clientErrorTimeToLive = 60 * 60 * 1000;
+	private long timeToLive = 60 * 1000;
+	
+	public CircuitBreaker() {
+	}
+	
+	/**
+	 * Gets the number of failures in a row which opens a host
+	 * 
+	 * @return
+	 */
+	public synchronized int getFailureThreshold() {
+		return failureThreshold;
+	}
+	
+	/**
+	 * Sets the number of failures in a row which opens a host. The default is 3.
+	 * 
+	 * @param failureThreshold
+	 */
+	public synchronized void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+	}
+	
+	/**
+	 * Sets in milliseconds how long a host stays open the first time and the longest it
+	 * stays open after opening over and over. The defaults are 2 seconds and 5 minutes.
+	 * 
+	 * @param baseMilli
+	 * @param maxMilli
+	 */
+	public synchronized void setBackoff(long baseMilli, long maxMilli) {
+		this.baseBackoff = Math.max(1, baseMilli);
+		this.maxBackoff = Math.max(baseBackoff, maxMilli);
+	}
+	
+	/**
+	 * Sets in milliseconds how long a url which got a 4xx response fails fast. 
+	 * The default is an hour.
+	 * 
+	 * @param timeToLiveMilli
+	 */
+	public synchronized void setClientErrorTimeToLive(long timeToLiveMilli) {
+		this.clientErrorTimeToLive = timeToLiveMilli;
+	}
+	
+	/**
+	 * Sets in milliseconds how long a url fails fast after an error which isn't from the
+	 * network, such as a file which couldn't be decoded. The default is 60 seconds.
+	 * 
+	 * @param timeToLiveMilli
+	 */
+	public synchronized void setTimeToLive(long timeToLiveMilli) {
+		this.timeToLive = timeToLiveMilli;
+	}
+	
+	/**
+	 * Whether requests to the host are failing fast
+	 * 
+	 * @param host the host name such as "images.example.com"
+	 * @return true if the host is open
+	 */
+	public synchronized boolean isOpen(String host) {
+		Host h = hosts.get(host.toLowerCase());
+		return h != null && h.state == OPEN && now() < h.openUntil;
+	}
+	
+	/**
+	 * Forgets all of the failures and closes all of the hosts
+	 */
+	public synchronized void clear() {
+		urlFailures.clear();
+		hosts.clear();
+	}
+	
+	/**
+	 * Gets the failure the url is failing fast with, without counting as a request
+	 * 
+	 * @param url
+	 * @return the failure or null if the url isn't failing
+	 */
+	public synchronized Failure getFailure(String url) {
+		return getUrlFailure(url);
+	}
+	
+	/**
+	 * Checks a request which is about to be made. While a host is half open the first 
+	 * request checked is let through as the trial.
+	 * 
+	 * @param url
+	 * @return the failure to fail the request with, or null to make the request
+	 */
+	public synchronized Failure checkRequest(String url) {
+		Failure failure = getUrlFailure(url);
+		if (failure != null) return failure;
+		String name = getHost(url);
+		if (name == null) return null;
+		Host host = hosts.get(name);
+		if (host == null || host.state == CLOSED) return null;
+		
+		long now = now();
+		if (host.state == OPEN) {
+			if (now < host.openUntil) return host;
+			host.state = HALF_OPEN;
+			host.trialStarted = 0;
+		}
+		// half open, so let a single trial through
+		if (host.trialStarted != 0 && now - host.trialStarted < TRIAL_TIMEOUT) return host;
+		host.trialStarted = now;
+		return null;
+	}
+	
+	/**
+	 * Records a request which worked, which closes its host
+	 * 
+	 * @param url
+	 */
+	public synchronized void onSuccess(String url) {
+		String name = getHost(url);
+		if (name == null) return;
+		Host host = hosts.get(name);
+		if (host == null) return;
+		host.state = CLOSED;
+		host.failures = 0;
+		host.trips = 0;
+		host.trialStarted = 0;
+	}
+	
+	/**
+	 * Records a request which was let through and then canceled before it finished. 
+	 * Nothing is counted against the url or its host. If it was the trial of a half open 
+	 * host the next request checked becomes the trial.
+	 * 
+	 * @param url
+	 */
+	public synchronized void onCanceled(String url) {
+		String name = getHost(url);
+		if (name == null) return;
+		Host host = hosts.get(name);
+		if (host == null || host.state != HALF_OPEN) return;
+		host.trialStarted = 0;
+	}
+	
+	/**
+	 * Records a request which failed
+	 * 
+	 * @param url
+	 * @param error what the request failed with
+	 * @return the failure the url or its host now fails fast with
+	 */
+	public synchronized Failure onFailure(String url, Throwable error) {
+		if (error instanceof HttpException && ((HttpException)error).isClientError()) {
+			return putUrlFailure(url, error, clientErrorTimeToLive);
+		}
+		if (!isHostError(error)) {
+			return putUrlFailure(url, error, timeToLive);
+		}
+		
+		String name = getHost(url);
+		if (name == null) return putUrlFailure(url, error, timeToLive);
+		Host host = hosts.get(name);
+		if (host == null) {
+			host = new Host();
+			hosts.put(name, host);
+		}
+		host.error = error;
+		host.failures++;
+		if (host.state == HALF_OPEN || host.failures >= failureThreshold) {
+			host.state = OPEN;
+			host.openUntil = now() + nextBackoff(host.trips);
+			host.trips++;
+			host.failures = 0;
+			host.trialStarted = 0;
+		}
+		return host;
+	}
+	
+	/**
+	 * Whether the error says the host is in trouble rather than the file
+	 */
+	protected boolean isHostError(Throwable error) {
+		if (error instanceof HttpException) return true;
+		// timeouts, refused connections, dns failures and dropped connections
+		return error instanceof IOException;
+	}
+	
+	/**
+	 * Gets the time in milliseconds. Only the difference between two times is used.
+	 */
+	protected long now() {
+		return System.nanoTime() / 1000000;
+	}
+	
+	/**
+	 * Gets the lower case host of the url or null if it doesn't have one, such as a file
+	 */
+	public static String getHost(String url) {
+		if (url == null) return null;
+		int start = url.indexOf("://");
+		if (start <= 0) return null;
+		start += 3;
+		int end = UrlUtils.findFirstOf(url, "/?#", start, url.length());
+		int at = url.lastIndexOf('@', end - 1);
+		if (at >= start) start = at + 1;
+		if (start >= end) return null;
+		return url.substring(start, end).toLowerCase();
+	}
+	
+	/*
+	 * The backoff doubles with each trip. Half of it is random so clients spread out.
+	 */
+	private long nextBackoff(int trips) {
+		long backoff = baseBackoff << Math.min(trips, 20);
+		if (backoff <= 0 || backoff > maxBackoff) backoff = maxBackoff;
+		long half = backoff / 2;
+		return half + (long)(random.nextDouble() * (backoff - half));
+	}
+	
+	private Failure getUrlFailure(String url) {
+		UrlFailure failure = urlFailures.get(url);
+		if (failure == null) return null;
+		if (failure.isValid()) return failure;
+		urlFailures.remove(url);
+		return null;
+	}
+	
+	private Failure putUrlFailure(String url, Throwable error, long timeToLive) {
+		UrlFailure failure = new UrlFailure(error, now() + timeToLive);
+		urlFailures.put(url, failure);
+		return failure;
+	}
+	
+	/*
+	 * The state of a host. It's also the failure the requests of an open host fail with.
+	 */
+	private class Host implements Failure {
+		private int state = CLOSED;
+		private int failures;
+		private int trips;
+		private long openUntil;
+		private long trialStarted;
+		private Throwable error;
+		
+		@Override
+		public Throwable getError() {
+			return error;
+		}
+		
+		@Override
+		public boolean isValid() {
+			synchronized (CircuitBreaker.this) {
+				return state != CLOSED;
+			}
+		}
+	}
+	
+	private class UrlFailure implements Failure {
+		private final Throwable error;
+		private final long until;
+		
+		private UrlFailure(Throwable error, long until) {
+			this.error = error;
+			this.until = until;
+		}
+		
+		@Override
+		public Throwable getError() {
+			return error;
+		}
+		
+		@Override
+		public boolean isValid() {
+			return now() < until;
+		}
+	}
+	
+	/*
+	 * Drops the least recently used entry past the size
+	 */
+	private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+		
+		private LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Supplies the executors the stages of a load run on. Each stage has its own so that a 
+ * slow download never holds up a thread that could be reading from the disk or decoding.
+ */
+public interface ExecutorProvider {
+	
+	/** Runs the reads and writes of the disk cache */
+	public Executor getDiskExecutor();
+	
+	/** Runs the downloads, which spend most of their time waiting on the network */
+	public Executor getNetworkExecutor();
+	
+	/** Runs the decodes and processors, which keep the CPU busy */
+	public Executor getDecodeExecutor();
+}
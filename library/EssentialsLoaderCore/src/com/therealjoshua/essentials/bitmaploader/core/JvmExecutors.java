@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors for running the loader on a plain JVM. The disk and decode stages get
+ * fixed pools. The network stage gets a virtual thread for each download on Java 21 and 
+ * later, since a blocked virtual thread costs next to nothing, and a cached pool before that.
+ */
+public class JvmExecutors implements ExecutorProvider {
+	
+	private final ExecutorService disk;
+	private final ExecutorService network;
+	private final ExecutorService decode;
+	private final boolean virtualThreads;
+	
+	/**
+	 * Constructor with 2 disk threads and a decode thread for each processor
+	 */
+	public JvmExecutors() {
+		this(2, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param diskThreads the number of threads reading and writing the disk cache
+	 * @param decodeThreads the number of threads decoding
+	 */
+	public JvmExecutors(int diskThreads, int decodeThreads) {
+		disk = Executors.newFixedThreadPool(diskThreads, new DaemonFactory("Loader disk"));
+		decode = Executors.newFixedThreadPool(decodeThreads, new DaemonFactory("Loader decode"));
+		ExecutorService virtual = newVirtualThreadExecutor();
+		virtualThreads = virtual != null;
+		network = virtual != null ? virtual : Executors.newCachedThreadPool(new DaemonFactory("Loader network"));
+	}
+	
+	@Override
+	public Executor getDiskExecutor() {
+		return disk;
+	}
+	
+	@Override
+	public Executor getNetworkExecutor() {
+		return network;
+	}
+	
+	@Override
+	public Executor getDecodeExecutor() {
+		return decode;
+	}
+	
+	/**
+	 * Whether downloads run on virtual threads
+	 */
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * Stops all of the threads once their work is done
+	 */
+	public void shutdown() {
+		disk.shutdown();
+		network.shutdown();
+		decode.shutdown();
+	}
+	
+	/*
+	 * Looked up by name so the core still builds and runs on older Javas
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	private static class DaemonFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(1);
+		private final String name;
+		
+		private DaemonFactory(String name) {
+			this.name = name;
+		}
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name + " #" + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
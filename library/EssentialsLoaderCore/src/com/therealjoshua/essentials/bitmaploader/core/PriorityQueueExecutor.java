@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An Executor with a fixed number of threads which runs the most important work first.
+ * Work is ordered by its priority, where 0 is the most important, and within the same 
+ * priority the newest work runs first. While a list is being flung the rows which just 
+ * came on screen are loaded before the rows which have already scrolled off.
+ *
+ * Work which is a {@link Future} or a {@link CancelableWork} that has been canceled while 
+ * it was waiting in the queue is dropped without ever running.
+ *
+ * Calling execute(Runnable) runs the work with priority 0.
+ */
+public class PriorityQueueExecutor implements Executor {
+	
+	/**
+	 * Work which knows if it has been canceled. Canceled work is dropped from the queue
+	 * instead of being run.
+	 */
+	public static interface CancelableWork extends Runnable {
+		public boolean isCancelled();
+	}
+
+	private final ThreadPoolExecutor impl;
+	private final BlockingQueue<Runnable> queue;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize the number of threads which run the work
+	 * @param name the prefix used to name the threads
+	 */
+	public PriorityQueueExecutor(int poolSize, final String name) {
+		this(poolSize, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(1);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + " #" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize the number of threads which run the work
+	 * @param threadFactory makes the threads
+	 */
+	public PriorityQueueExecutor(int poolSize, ThreadFactory threadFactory) {
+		if (poolSize <= 0) throw new IllegalArgumentException("poolSize <= 0");
+		queue = new PriorityBlockingQueue<Runnable>();
+		impl = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queue, threadFactory);
+	}
+
+	/**
+	 * Runs the work with priority 0
+	 */
+	@Override
+	public void execute(Runnable command) {
+		execute(command, 0);
+	}
+
+	/**
+	 * Queues the work to run with the given priority. Work queued later runs before work
+	 * which was queued earlier with the same priority.
+	 *
+	 * @param command the work to run
+	 * @param priority how important the work is, where lower runs first
+	 */
+	public void execute(Runnable command, int priority) {
+		if (command == null) throw new NullPointerException();
+		impl.execute(new Entry(command, priority, sequence.getAndIncrement()));
+	}
+
+	/**
+	 * Moves work which is still waiting in the queue so that it runs as the newest work of the
+	 * given priority. The work never drops to a lower priority than it already has.
+	 *
+	 * @param command the work which was passed to execute
+	 * @param priority the new priority
+	 * @return true if the work was still waiting and has been requeued
+	 */
+	public boolean promote(Runnable command, int priority) {
+		Iterator<Runnable> it = queue.iterator();
+		while (it.hasNext()) {
+			Entry e = (Entry)it.next();
+			if (e.command != command) continue;
+			if (!queue.remove(e)) return false; // a thread took it meanwhile
+			impl.execute(new Entry(command, Math.min(priority, e.priority), sequence.getAndIncrement()));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the canceled work from the queue. Canceled work is also dropped when it
+	 * reaches the head of the queue, so calling this is only needed to free up the memory early.
+	 */
+	public void purge() {
+		Iterator<Runnable> it = queue.iterator();
+		while (it.hasNext()) {
+			Entry e = (Entry)it.next();
+			if (e.isCancelled()) queue.remove(e);
+		}
+	}
+
+	/**
+	 * Gets the number of items waiting to run
+	 *
+	 * @return
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Stops the threads once the running work finishes. Work still in the queue never runs.
+	 */
+	public void shutdown() {
+		impl.shutdownNow();
+	}
+
+	private static class Entry implements Runnable, Comparable<Entry> {
+		private final Runnable command;
+		private final int priority;
+		private final long sequence;
+
+		private Entry(Runnable command, int priority, long sequence) {
+			this.command = command;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		private boolean isCancelled() {
+			if (command instanceof CancelableWork) return ((CancelableWork)command).isCancelled();
+			return command instanceof Future && ((Future<?>)command).isCancelled();
+		}
+
+		@Override
+		public void run() {
+			if (isCancelled()) return;
+			command.run();
+		}
+
+		@Override
+		public int compareTo(Entry another) {
+			if (priority != another.priority) return priority < another.priority ? -1 : 1;
+			// newest first
+			if (sequence == another.sequence) return 0;
+			return sequence > another.sequence ? -1 : 1;
+		}
+	}
+}
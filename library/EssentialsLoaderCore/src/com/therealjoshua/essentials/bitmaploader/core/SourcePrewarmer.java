@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import com.therealjoshua.essentials.bitmaploader.HttpException;
+import com.therealjoshua.essentials.bitmaploader.cache.DiskLruCache;
+import com.therealjoshua.essentials.bitmaploader.cache.KeyHasher;
+
+/**
+ * Downloads files into a disk cache under the same keys the BitmapLoader keeps its source 
+ * files, without any Android classes. Use it to fill a cache ahead of time, such as on a 
+ * build machine, and ship the directory with the app. The loader reads those files in 
+ * {@code DiskCacheMode.SOURCE}.
+ * 
+ * Open the cache the way the loader's DiskLruCacheFacade does, with an app version of 0 
+ * and a value count of 1.
+ * 
+ * <pre>
+ * DiskLruCache disk = DiskLruCache.open(dir, 0, 1, 100 * 1024 * 1024);
+ * SourcePrewarmer prewarmer = new SourcePrewarmer(disk);
+ * prewarmer.prewarm(url);
+ * </pre>
+ */
+public class SourcePrewarmer {
+	
+	private static final int IO_BUFFER_SIZE = 8 * 1024;
+	
+	private final DiskLruCache diskCache;
+	private int connectTimeout = 0;
+	private int readTimeout = 0;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param diskCache where the downloaded files are kept
+	 */
+	public SourcePrewarmer(DiskLruCache diskCache) {
+		if (diskCache == null) throw new NullPointerException("diskCache");
+		this.diskCache = diskCache;
+	}
+	
+	public void setConnectTimeout(int milli) {
+		this.connectTimeout = milli;
+	}
+	
+	public void setReadTimeout(int milli) {
+		this.readTimeout = milli;
+	}
+	
+	/**
+	 * Downloads the file into the disk cache if it isn't there yet. Runs on the calling thread.
+	 * 
+	 * @param uri
+	 * @return true if the file was downloaded, false if it was already on disk or another 
+	 * 		thread is writing it
+	 * @throws IOException
+	 */
+	public boolean prewarm(String uri) throws IOException {
+		String key = KeyHasher.sourceKey(uri);
+		DiskLruCache.Snapshot snapshot = diskCache.get(key);
+		if (snapshot != null) {
+			snapshot.close();
+			return false;
+		}
+		
+		URLConnection connection = new URL(uri).openConnection();
+		if (connectTimeout > 0) connection.setConnectTimeout(connectTimeout);
+		if (readTimeout > 0) connection.setReadTimeout(readTimeout);
+		if (connection instanceof HttpURLConnection) {
+			int code = ((HttpURLConnection)connection).getResponseCode();
+			if (code >= 400) {
+				((HttpURLConnection)connection).disconnect();
+				throw new HttpException(code, uri);
+			}
+		}
+		
+		DiskLruCache.Editor editor = null;
+		OutputStream out = null;
+		InputStream in = null;
+		try {
+			in = connection.getInputStream();
+			// only locked once there is something to write, and unlocked below if it fails
+			editor = diskCache.edit(key);
+			if (editor == null) return false;
+			out = editor.newOutputStream(0);
+			byte[] buffer = new byte[IO_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			out.close();
+			out = null;
+			editor.commit();
+			return true;
+		} finally {
+			closeQuietly(out);
+			if (editor != null) editor.abortUnlessCommitted();
+			closeQuietly(in);
+		}
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * Transforms the color of each pixel with a 4x5 matrix laid out the same as 
+ * android.graphics.ColorMatrix:
+ * <pre>
+ * R' = a*R + b*G + c*B + d*A + e
+ * G' = f*R + g*G + h*B + i*A + j
+ * B' = k*R + l*G + m*B + n*A + o
+ * A' = p*R + q*G + r*B + s*A + t
+ * </pre>
+ * The channels and the offsets are in the range 0 to 255 and the results are clamped 
+ * to it. The math is done in 16.16 fixed point, so the coefficients are clamped to 
+ * plus or minus 8 and the offsets to plus or minus 2040 to keep it from overflowing.
+ */
+public class ColorMatrixKernel extends PixelKernel {
+	
+	private static final float MAX_COEFFICIENT = 8;
+	private static final float MAX_OFFSET = MAX_COEFFICIENT * 255;
+	
+	private final int[] m = new int[20];
+	private final boolean keepsAlpha;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param matrix the 20 values of the matrix, row by row
+	 */
+	public ColorMatrixKernel(float[] matrix) {
+		if (matrix.length < 20) throw new IllegalArgumentException("matrix.length < 20");
+		for (int i = 0; i < 20; i++) {
+			float v = matrix[i];
+			float max = i % 5 == 4 ? MAX_OFFSET : MAX_COEFFICIENT;
+			v = Math.max(-max, Math.min(max, v));
+			m[i] = Math.round(v * 65536f);
+		}
+		keepsAlpha = m[15] == 0 && m[16] == 0 && m[17] == 0 && m[18] == 65536 && m[19] == 0;
+	}
+	
+	/**
+	 * Creates a kernel which changes the saturation the same as ColorMatrix.setSaturation
+	 * 
+	 * @param saturation 0 for grey, 1 for no change and above 1 for stronger colors
+	 */
+	public static ColorMatrixKernel saturation(float saturation) {
+		float inverse = 1 - saturation;
+		float r = 0.213f * inverse;
+		float g = 0.715f * inverse;
+		float b = 0.072f * inverse;
+		return new ColorMatrixKernel(new float[] {
+				r + saturation, g, b, 0, 0,
+				r, g + saturation, b, 0, 0,
+				r, g, b + saturation, 0, 0,
+				0, 0, 0, 1, 0 });
+	}
+	
+	/**
+	 * Creates a kernel which changes the brightness and contrast. The contrast 
+	 * stretches the colors away from the middle grey and the brightness is added after.
+	 * 
+	 * @param brightness -255 to 255 with 0 for no change
+	 * @param contrast 0 for all grey, 1 for no change and above 1 for more contrast
+	 */
+	public static ColorMatrixKernel brightnessContrast(float brightness, float contrast) {
+		float offset = 128 * (1 - contrast) + brightness;
+		return new ColorMatrixKernel(new float[] {
+				contrast, 0, 0, 0, offset,
+				0, contrast, 0, 0, offset,
+				0, 0, contrast, 0, offset,
+				0, 0, 0, 1, 0 });
+	}
+	
+	@Override
+	public void apply(int pass, int[] pixels, int width, int height) {
+		// locals so the loop doesn't go through the field
+		int[] m = this.m;
+		int m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4] + 0x8000;
+		int m5 = m[5], m6 = m[6], m7 = m[7], m8 = m[8], m9 = m[9] + 0x8000;
+		int m10 = m[10], m11 = m[11], m12 = m[12], m13 = m[13], m14 = m[14] + 0x8000;
+		int m15 = m[15], m16 = m[16], m17 = m[17], m18 = m[18], m19 = m[19] + 0x8000;
+		boolean keepsAlpha = this.keepsAlpha;
+		
+		int n = width * height;
+		for (int i = 0; i < n; i++) {
+			int p = pixels[i];
+			int a = p >>> 24;
+			int r = (p >> 16) & 0xff;
+			int g = (p >> 8) & 0xff;
+			int b = p & 0xff;
+			int r2 = clamp((m0 * r + m1 * g + m2 * b + m3 * a + m4) >> 16);
+			int g2 = clamp((m5 * r + m6 * g + m7 * b + m8 * a + m9) >> 16);
+			int b2 = clamp((m10 * r + m11 * g + m12 * b + m13 * a + m14) >> 16);
+			int a2 = keepsAlpha ? a : clamp((m15 * r + m16 * g + m17 * b + m18 * a + m19) >> 16);
+			pixels[i] = (a2 << 24) | (r2 << 16) | (g2 << 8) | b2;
+		}
+	}
+	
+	private static int clamp(int v) {
+		return v < 0 ? 0 : (v > 255 ? 255 : v);
+	}
+}
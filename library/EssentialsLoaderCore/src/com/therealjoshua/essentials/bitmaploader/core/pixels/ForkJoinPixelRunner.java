@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A {@link PixelRunner} which spreads the strips of each pass over a ForkJoinPool. 
+ * The strips are split in halves until each task has one, so idle threads steal 
+ * the larger halves first. The calling thread waits for the pass and the strips of
+ * an image which fits in one strip run on it directly.
+ * 
+ * ForkJoinPool needs Java 7, or API 21 on Android.
+ */
+public class ForkJoinPixelRunner extends PixelRunner {
+	
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Creates a runner with its own pool of a thread for each processor
+	 */
+	public ForkJoinPixelRunner() {
+		this(new ForkJoinPool());
+	}
+	
+	public ForkJoinPixelRunner(ForkJoinPool pool) {
+		this(pool, DEFAULT_STRIP_SIZE);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param pool the pool the strips run on
+	 * @param stripSize the most pixels in a strip
+	 */
+	public ForkJoinPixelRunner(ForkJoinPool pool, int stripSize) {
+		super(stripSize);
+		this.pool = pool;
+	}
+	
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	@Override
+	protected void runStrips(PixelKernel kernel, PixelSurface surface, int pass, int linesPerStrip, int count) {
+		if (count <= 1) {
+			super.runStrips(kernel, surface, pass, linesPerStrip, count);
+			return;
+		}
+		pool.invoke(new Strips(kernel, surface, pass, linesPerStrip, 0, count));
+	}
+	
+	private class Strips extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final PixelKernel kernel;
+		private final PixelSurface surface;
+		private final int pass;
+		private final int linesPerStrip;
+		private final int from;
+		private final int to;
+		
+		private Strips(PixelKernel kernel, PixelSurface surface, int pass, int linesPerStrip, int from, int to) {
+			this.kernel = kernel;
+			this.surface = surface;
+			this.pass = pass;
+			this.linesPerStrip = linesPerStrip;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				runStrip(kernel, surface, pass, linesPerStrip, from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Strips(kernel, surface, pass, linesPerStrip, from, middle),
+					new Strips(kernel, surface, pass, linesPerStrip, middle, to));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * A {@link PixelSurface} over an int array of ARGB pixels, one row after the other
+ */
+public class IntArraySurface implements PixelSurface {
+	
+	private final int[] pixels;
+	private final int width;
+	private final int height;
+	
+	public IntArraySurface(int[] pixels, int width, int height) {
+		if (pixels.length < width * height) throw new IllegalArgumentException("pixels.length < width * height");
+		this.pixels = pixels;
+		this.width = width;
+		this.height = height;
+	}
+	
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public void read(int[] buffer, int x, int y, int width, int height) {
+		for (int row = 0; row < height; row++) {
+			System.arraycopy(pixels, (y + row) * this.width + x, buffer, row * width, width);
+		}
+	}
+	
+	@Override
+	public void write(int[] buffer, int x, int y, int width, int height) {
+		for (int row = 0; row < height; row++) {
+			System.arraycopy(buffer, row * width, pixels, (y + row) * this.width + x, width);
+		}
+	}
+	
+	@Override
+	public void onPassFinished() {
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * Work done on the pixels of an image, split into strips so it can run on several 
+ * threads and out of a buffer the size of a strip. Each pass goes over the image 
+ * either in strips of whole rows or in strips of whole columns, and every strip of 
+ * a pass is finished before the next pass starts. A kernel which only looks at one 
+ * pixel at a time needs a single row pass. A separable filter such as a blur does 
+ * the rows and then the columns.
+ * 
+ * Kernels are shared by the threads running the strips, so apply must not change 
+ * the kernel's fields.
+ */
+public abstract class PixelKernel {
+	
+	/**
+	 * Gets the number of passes. The default is 1.
+	 */
+	public int getPassCount() {
+		return 1;
+	}
+	
+	/**
+	 * Gets if the pass goes over strips of columns instead of rows. The default is rows.
+	 */
+	public boolean isColumnPass(int pass) {
+		return false;
+	}
+	
+	/**
+	 * Processes a strip in place. The strip is a rectangle of the image laid out one 
+	 * row after the other. A row pass gets whole rows and a column pass whole columns.
+	 * 
+	 * @param pass the pass, starting at 0
+	 * @param pixels the strip of ARGB pixels
+	 * @param width the width of the strip
+	 * @param height the height of the strip
+	 */
+	public abstract void apply(int pass, int[] pixels, int width, int height);
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * Runs a {@link PixelKernel} over a {@link PixelSurface} a strip at a time. Each strip 
+ * is read into a buffer, processed and written back. The buffer belongs to the thread 
+ * and is reused, so however large the image is only a strip of it is held as ints. 
+ * 
+ * This runs the strips one after the other on the calling thread. The 
+ * {@link ForkJoinPixelRunner} spreads them over a pool.
+ */
+public class PixelRunner {
+	
+	/** The default number of pixels in a strip, 128KB of ints which stay in the cache */
+	public static final int DEFAULT_STRIP_SIZE = 32 * 1024;
+	
+	private final int stripSize;
+	private final ThreadLocal<int[]> buffers = new ThreadLocal<int[]>();
+	
+	public PixelRunner() {
+		this(DEFAULT_STRIP_SIZE);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param stripSize the most pixels in a strip. A strip always holds at least one 
+	 * 		row or column, so it can be larger for a large image.
+	 */
+	public PixelRunner(int stripSize) {
+		if (stripSize <= 0) throw new IllegalArgumentException("stripSize <= 0");
+		this.stripSize = stripSize;
+	}
+	
+	/**
+	 * Runs every pass of the kernel over the surface and returns once it's done
+	 */
+	public void run(PixelKernel kernel, PixelSurface surface) {
+		int width = surface.getWidth();
+		int height = surface.getHeight();
+		if (width <= 0 || height <= 0) return;
+		int passes = kernel.getPassCount();
+		for (int pass = 0; pass < passes; pass++) {
+			boolean columns = kernel.isColumnPass(pass);
+			int lines = columns ? width : height;
+			int lineLength = columns ? height : width;
+			int linesPerStrip = Math.max(1, stripSize / lineLength);
+			int count = (lines + linesPerStrip - 1) / linesPerStrip;
+			runStrips(kernel, surface, pass, linesPerStrip, count);
+			surface.onPassFinished();
+		}
+	}
+	
+	/**
+	 * Runs the strips of a pass and returns once they're all done
+	 * 
+	 * @param count the number of strips, which are run with {@link #runStrip}
+	 */
+	protected void runStrips(PixelKernel kernel, PixelSurface surface, int pass, int linesPerStrip, int count) {
+		for (int i = 0; i < count; i++) {
+			runStrip(kernel, surface, pass, linesPerStrip, i);
+		}
+	}
+	
+	/**
+	 * Reads, processes and writes back one strip. Safe to call from any thread.
+	 */
+	protected final void runStrip(PixelKernel kernel, PixelSurface surface, int pass, int linesPerStrip, int index) {
+		boolean columns = kernel.isColumnPass(pass);
+		int width = surface.getWidth();
+		int height = surface.getHeight();
+		int first = index * linesPerStrip;
+		int lines = Math.min(linesPerStrip, (columns ? width : height) - first);
+		int x = columns ? first : 0;
+		int y = columns ? 0 : first;
+		int stripWidth = columns ? lines : width;
+		int stripHeight = columns ? height : lines;
+		
+		int[] buffer = buffers.get();
+		if (buffer == null || buffer.length < stripWidth * stripHeight) {
+			buffer = new int[stripWidth * stripHeight];
+			buffers.set(buffer);
+		}
+		surface.read(buffer, x, y, stripWidth, stripHeight);
+		kernel.apply(pass, buffer, stripWidth, stripHeight);
+		surface.write(buffer, x, y, stripWidth, stripHeight);
+	}
+}
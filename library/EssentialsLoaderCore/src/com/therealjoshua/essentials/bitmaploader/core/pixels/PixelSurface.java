@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * The image a {@link PixelKernel} runs over, read and written a strip at a time. The 
+ * pixels are packed ARGB ints which aren't premultiplied, the same as 
+ * Bitmap.getPixels on Android.
+ * 
+ * Strips which don't overlap may be read and written from several threads at once.
+ */
+public interface PixelSurface {
+	
+	public int getWidth();
+	
+	public int getHeight();
+	
+	/**
+	 * Copies the rectangle into the buffer, one row after the other with no gaps
+	 */
+	public void read(int[] buffer, int x, int y, int width, int height);
+	
+	/**
+	 * Copies the buffer, laid out as {@link #read} lays it out, into the rectangle
+	 */
+	public void write(int[] buffer, int x, int y, int width, int height);
+	
+	/**
+	 * Called after each pass of a kernel, once every strip of the pass is written
+	 */
+	public void onPassFinished();
+}
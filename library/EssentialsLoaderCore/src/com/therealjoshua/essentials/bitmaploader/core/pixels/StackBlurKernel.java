@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+/**
+ * A stack blur, which looks close to a gaussian blur and takes the same time whatever 
+ * the radius. It's Mario Klingemann's algorithm run as a pass over the rows and then 
+ * one over the columns. Each line keeps running sums of the pixels coming into and 
+ * going out of the window, so each pixel costs the same few adds. Nothing is allocated 
+ * per pixel, only a line and the window once per strip.
+ */
+public class StackBlurKernel extends PixelKernel {
+	
+	/** 
+	 * The largest radius. The division by the sum of the weights is done with a 
+	 * multiply, which is exact as long as 255 * weights^2 fits in 32 bits.
+	 */
+	public static final int MAX_RADIUS = 50;
+	
+	private final int radius;
+	// 2^32 / the sum of the weights, rounded up
+	private final long multiplier;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param radius 1 to {@link #MAX_RADIUS}
+	 */
+	public StackBlurKernel(int radius) {
+		if (radius < 1 || radius > MAX_RADIUS) throw new IllegalArgumentException("radius must be 1 to " + MAX_RADIUS);
+		this.radius = radius;
+		long weights = (long)(radius + 1) * (radius + 1);
+		multiplier = ((1L << 32) + weights - 1) / weights;
+	}
+	
+	public int getRadius() {
+		return radius;
+	}
+	
+	@Override
+	public int getPassCount() {
+		return 2;
+	}
+	
+	@Override
+	public boolean isColumnPass(int pass) {
+		return pass == 1;
+	}
+	
+	@Override
+	public void apply(int pass, int[] pixels, int width, int height) {
+		int[] stack = new int[radius * 2 + 1];
+		if (pass == 0) {
+			int[] line = new int[width];
+			for (int y = 0; y < height; y++) {
+				blurLine(pixels, y * width, 1, width, line, stack);
+			}
+		} else {
+			int[] line = new int[height];
+			for (int x = 0; x < width; x++) {
+				blurLine(pixels, x, width, height, line, stack);
+			}
+		}
+	}
+	
+	private void blurLine(int[] pixels, int start, int stride, int length, int[] line, int[] stack) {
+		int radius = this.radius;
+		long mul = multiplier;
+		int div = radius * 2 + 1;
+		int last = length - 1;
+		for (int i = 0, p = start; i < length; i++, p += stride) {
+			line[i] = pixels[p];
+		}
+		
+		int sumA = 0, sumR = 0, sumG = 0, sumB = 0;
+		int inA = 0, inR = 0, inG = 0, inB = 0;
+		int outA = 0, outR = 0, outG = 0, outB = 0;
+		for (int i = -radius; i <= radius; i++) {
+			int c = line[i < 0 ? 0 : (i > last ? last : i)];
+			stack[i + radius] = c;
+			int a = c >>> 24, r = (c >> 16) & 0xff, g = (c >> 8) & 0xff, b = c & 0xff;
+			int weight = radius + 1 - (i < 0 ? -i : i);
+			sumA += a * weight;
+			sumR += r * weight;
+			sumG += g * weight;
+			sumB += b * weight;
+			if (i > 0) {
+				inA += a; inR += r; inG += g; inB += b;
+			} else {
+				outA += a; outR += r; outG += g; outB += b;
+			}
+		}
+		
+		int pointer = radius;
+		for (int x = 0, p = start; x < length; x++, p += stride) {
+			pixels[p] = (int)((sumA * mul) >>> 32) << 24
+					| (int)((sumR * mul) >>> 32) << 16
+					| (int)((sumG * mul) >>> 32) << 8
+					| (int)((sumB * mul) >>> 32);
+			
+			sumA -= outA; sumR -= outR; sumG -= outG; sumB -= outB;
+			
+			// the oldest pixel leaves the window and the next one takes its place
+			int slot = pointer - radius;
+			if (slot < 0) slot += div;
+			int c = stack[slot];
+			outA -= c >>> 24; outR -= (c >> 16) & 0xff; outG -= (c >> 8) & 0xff; outB -= c & 0xff;
+			
+			int next = x + radius + 1;
+			c = line[next > last ? last : next];
+			stack[slot] = c;
+			inA += c >>> 24; inR += (c >> 16) & 0xff; inG += (c >> 8) & 0xff; inB += c & 0xff;
+			
+			sumA += inA; sumR += inR; sumG += inG; sumB += inB;
+			
+			// the pixel at the center moves from the incoming side to the outgoing side
+			if (++pointer == div) pointer = 0;
+			c = stack[pointer];
+			int a = c >>> 24, r = (c >> 16) & 0xff, g = (c >> 8) & 0xff, b = c & 0xff;
+			outA += a; outR += r; outG += g; outB += b;
+			inA -= a; inR -= r; inG -= g; inB -= b;
+		}
+	}
+}
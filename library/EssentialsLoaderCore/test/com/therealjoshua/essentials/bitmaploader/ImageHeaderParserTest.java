@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.therealjoshua.essentials.bitmaploader.ImageHeaderParser.Header;
+
+public class ImageHeaderParserTest {
+	
+	@Test
+	public void jpegBaseline() throws IOException {
+		assertHeader(jpeg(0xC0, 640, 480), 640, 480, "image/jpeg");
+	}
+	
+	@Test
+	public void jpegProgressiveAfterExifAndPadding() throws IOException {
+		Bytes b = new Bytes().add(0xFF, 0xD8);
+		// an APP1 segment standing in for EXIF, then fill bytes before the next marker
+		b.add(0xFF, 0xE1).u16be(2 + 300).zeros(300);
+		b.add(0xFF, 0xFF, 0xFF, 0xC2).u16be(17).add(8).u16be(1200).u16be(1600);
+		assertHeader(b.toArray(), 1600, 1200, "image/jpeg");
+	}
+	
+	@Test
+	public void jpegSkipsTablesWhichShareTheFrameRange() throws IOException {
+		Bytes b = new Bytes().add(0xFF, 0xD8);
+		// DHT is 0xC4, which isn't a frame even though it's between SOF0 and SOF15
+		b.add(0xFF, 0xC4).u16be(2 + 4).add(1, 2, 3, 4);
+		b.add(0xFF, 0xC0).u16be(17).add(8).u16be(10).u16be(20);
+		assertHeader(b.toArray(), 20, 10, "image/jpeg");
+	}
+	
+	@Test
+	public void jpegWithoutFrameBeforeScan() throws IOException {
+		byte[] data = new Bytes().add(0xFF, 0xD8, 0xFF, 0xDA).u16be(8).zeros(6).toArray();
+		assertNull(parse(data));
+	}
+	
+	@Test
+	public void jpegWithBrokenSegmentLength() throws IOException {
+		byte[] data = new Bytes().add(0xFF, 0xD8, 0xFF, 0xE0).u16be(1).zeros(20).toArray();
+		assertNull(parse(data));
+	}
+	
+	@Test
+	public void png() throws IOException {
+		assertHeader(png(321, 123), 321, 123, "image/png");
+	}
+	
+	@Test
+	public void pngWithZeroWidth() throws IOException {
+		assertNull(parse(png(0, 10)));
+	}
+	
+	@Test
+	public void gif87aAndGif89a() throws IOException {
+		assertHeader(gif('7', 300, 2), 300, 2, "image/gif");
+		assertHeader(gif('9', 65535, 1), 65535, 1, "image/gif");
+	}
+	
+	@Test
+	public void webpLossy() throws IOException {
+		assertHeader(webpLossy(550, 368), 550, 368, "image/webp");
+	}
+	
+	@Test
+	public void webpLossyIgnoresTheScaleBits() throws IOException {
+		Bytes b = webpStart("VP8 ").add(0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A);
+		b.u16le(550 | 0xC000).u16le(368 | 0x4000);
+		assertHeader(b.toArray(), 550, 368, "image/webp");
+	}
+	
+	@Test
+	public void webpLossless() throws IOException {
+		assertHeader(webpLossless(16383, 1), 16383, 1, "image/webp");
+		assertHeader(webpLossless(1, 16384), 1, 16384, "image/webp");
+	}
+	
+	@Test
+	public void webpExtended() throws IOException {
+		assertHeader(webpExtended(1 << 20, 77), 1 << 20, 77, "image/webp");
+	}
+	
+	@Test
+	public void unknownWebpChunk() throws IOException {
+		assertNull(parse(webpStart("ALPH").zeros(10).toArray()));
+	}
+	
+	@Test
+	public void everyTruncationFailsCleanly() throws IOException {
+		byte[][] fixtures = {
+				jpeg(0xC0, 640, 480), png(321, 123), gif('9', 300, 2), 
+				webpLossy(550, 368), webpLossless(100, 200), webpExtended(4000, 3000)
+		};
+		for (byte[] fixture : fixtures) {
+			// each fixture ends with the last byte of the size, so any shorter cut loses it
+			for (int length = 0; length < fixture.length; length++) {
+				assertNull("cut at " + length, parse(Arrays.copyOf(fixture, length)));
+			}
+			assertNotNull(parse(fixture));
+		}
+	}
+	
+	@Test
+	public void garbageFailsCleanly() throws IOException {
+		Random random = new Random(42);
+		int[][] starts = {{}, {0xFF, 0xD8}, {0x89, 'P'}, {'G', 'I'}, {'R', 'I'}};
+		for (int[] start : starts) {
+			for (int i = 0; i < 500; i++) {
+				Bytes b = new Bytes();
+				for (int s : start) b.add(s);
+				byte[] noise = new byte[random.nextInt(64)];
+				random.nextBytes(noise);
+				b.add(noise);
+				// garbage may happen to spell a header, but never a broken one or an exception
+				Header header = parse(b.toArray());
+				if (header != null) {
+					assertTrue(header.getWidth() > 0 && header.getHeight() > 0);
+				}
+			}
+		}
+		assertNull(parse("<html><body>Not Found</body></html>".getBytes("US-ASCII")));
+	}
+	
+	@Test
+	public void leavesTheRestOfTheStream() throws IOException {
+		byte[] data = new Bytes().add(png(8, 8)).add(0x42).toArray();
+		InputStream in = new ByteArrayInputStream(data);
+		assertNotNull(ImageHeaderParser.parse(in));
+		assertEquals(0x42, in.read());
+	}
+	
+	@Test
+	public void readsWhenSkipGivesUp() throws IOException {
+		Bytes b = new Bytes().add(0xFF, 0xD8).add(0xFF, 0xE1).u16be(2 + 100).zeros(100);
+		b.add(0xFF, 0xC0).u16be(17).add(8).u16be(5).u16be(6);
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(b.toArray())) {
+			@Override
+			public long skip(long n) {
+				return 0;
+			}
+		};
+		Header header = ImageHeaderParser.parse(in);
+		assertEquals(6, header.getWidth());
+		assertEquals(5, header.getHeight());
+	}
+	
+	@Test
+	public void filesFromARealEncoder() throws IOException {
+		BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+		for (String format : new String[] {"png", "jpg", "gif"}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertTrue(format, ImageIO.write(image, format, out));
+			Header header = parse(out.toByteArray());
+			assertNotNull(format, header);
+			assertEquals(format, 37, header.getWidth());
+			assertEquals(format, 23, header.getHeight());
+		}
+	}
+	
+	private static Header parse(byte[] data) throws IOException {
+		return ImageHeaderParser.parse(new ByteArrayInputStream(data));
+	}
+	
+	private static void assertHeader(byte[] data, int width, int height, String mimeType) throws IOException {
+		Header header = parse(data);
+		assertNotNull(header);
+		assertEquals(width, header.getWidth());
+		assertEquals(height, header.getHeight());
+		assertEquals(mimeType, header.getMimeType());
+	}
+	
+	private static byte[] jpeg(int sof, int width, int height) {
+		Bytes b = new Bytes().add(0xFF, 0xD8);
+		b.add(0xFF, 0xE0).u16be(16).add('J', 'F', 'I', 'F', 0).zeros(9);
+		return b.add(0xFF, sof).u16be(17).add(8).u16be(height).u16be(width).toArray();
+	}
+	
+	private static byte[] png(int width, int height) {
+		Bytes b = new Bytes().add(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+		return b.u32be(13).ascii("IHDR").u32be(width).u32be(height).toArray();
+	}
+	
+	private static byte[] gif(char version, int width, int height) {
+		return new Bytes().ascii("GIF8").add(version, 'a').u16le(width).u16le(height).toArray();
+	}
+	
+	private static Bytes webpStart(String chunk) {
+		return new Bytes().ascii("RIFF").u32le(1000).ascii("WEBP").ascii(chunk).u32le(100);
+	}
+	
+	private static byte[] webpLossy(int width, int height) {
+		Bytes b = webpStart("VP8 ").add(0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A);
+		return b.u16le(width).u16le(height).toArray();
+	}
+	
+	private static byte[] webpLossless(int width, int height) {
+		int bits = (width - 1) | ((height - 1) << 14);
+		return webpStart("VP8L").add(0x2F).u32le(bits).toArray();
+	}
+	
+	private static byte[] webpExtended(int width, int height) {
+		return webpStart("VP8X").add(0x10, 0, 0, 0).u24le(width - 1).u24le(height - 1).toArray();
+	}
+	
+	private static class Bytes {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		Bytes add(int... values) {
+			for (int v : values) out.write(v);
+			return this;
+		}
+		
+		Bytes add(byte[] values) {
+			out.write(values, 0, values.length);
+			return this;
+		}
+		
+		Bytes ascii(String s) {
+			for (int i = 0; i < s.length(); i++) out.write(s.charAt(i));
+			return this;
+		}
+		
+		Bytes zeros(int count) {
+			return add(new byte[count]);
+		}
+		
+		Bytes u16be(int v) {
+			return add(v >> 8, v);
+		}
+		
+		Bytes u16le(int v) {
+			return add(v, v >> 8);
+		}
+		
+		Bytes u24le(int v) {
+			return add(v, v >> 8, v >> 16);
+		}
+		
+		Bytes u32be(int v) {
+			return add(v >>> 24, v >> 16, v >> 8, v);
+		}
+		
+		Bytes u32le(int v) {
+			return add(v, v >> 8, v >> 16, v >>> 24);
+		}
+		
+		byte[] toArray() {
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.therealjoshua.essentials.bitmaploader.HttpException;
+
+public class CircuitBreakerTest {
+	
+	private static final String HOST = "images.example.com";
+	private static final String URL = "http://" + HOST + "/photos/";
+	
+	private FakeClockBreaker breaker;
+	
+	@Before
+	public void setUp() {
+		breaker = new FakeClockBreaker();
+		breaker.setFailureThreshold(3);
+		breaker.setBackoff(2000, 60000);
+	}
+	
+	@Test
+	public void canceledRequestsLeaveTheHostClosed() {
+		for (int i = 0; i < 10; i++) {
+			String url = URL + i + ".jpg";
+			assertNull(breaker.checkRequest(url));
+			// the loader reports a canceled download instead of the closed stream it failed on
+			breaker.onCanceled(url);
+		}
+		assertFalse(breaker.isOpen(HOST));
+		assertNull(breaker.checkRequest(URL + "next.jpg"));
+		assertNull(breaker.getFailure(URL + "0.jpg"));
+	}
+	
+	@Test
+	public void failuresInARowOpenTheHost() {
+		for (int i = 0; i < 3; i++) {
+			String url = URL + i + ".jpg";
+			assertNull(breaker.checkRequest(url));
+			breaker.onFailure(url, new SocketException("Connection reset"));
+		}
+		assertTrue(breaker.isOpen(HOST));
+		CircuitBreaker.Failure failure = breaker.checkRequest(URL + "next.jpg");
+		assertNotNull(failure);
+		assertEquals("Connection reset", failure.getError().getMessage());
+	}
+	
+	@Test
+	public void canceledTrialLetsAnotherTrialThrough() {
+		openHost();
+		breaker.time += 2001;
+		String trial = URL + "trial.jpg";
+		assertNull(breaker.checkRequest(trial));
+		// only the trial goes through while the host is half open
+		assertNotNull(breaker.checkRequest(URL + "other.jpg"));
+		
+		breaker.onCanceled(trial);
+		assertNull(breaker.checkRequest(URL + "other.jpg"));
+	}
+	
+	@Test
+	public void failedTrialOpensTheHostAgain() {
+		openHost();
+		breaker.time += 2001;
+		String trial = URL + "trial.jpg";
+		assertNull(breaker.checkRequest(trial));
+		breaker.onFailure(trial, new IOException("timeout"));
+		assertTrue(breaker.isOpen(HOST));
+	}
+	
+	@Test
+	public void successClosesTheHost() {
+		openHost();
+		breaker.time += 2001;
+		String trial = URL + "trial.jpg";
+		assertNull(breaker.checkRequest(trial));
+		breaker.onSuccess(trial);
+		assertFalse(breaker.isOpen(HOST));
+		assertNull(breaker.checkRequest(URL + "other.jpg"));
+	}
+	
+	@Test
+	public void clientErrorOnlyFailsTheUrl() {
+		String missing = URL + "missing.jpg";
+		for (int i = 0; i < 5; i++) {
+			breaker.onFailure(missing, new HttpException(404, missing));
+		}
+		assertFalse(breaker.isOpen(HOST));
+		assertNotNull(breaker.checkRequest(missing));
+		assertNull(breaker.checkRequest(URL + "other.jpg"));
+	}
+	
+	private void openHost() {
+		for (int i = 0; i < 3; i++) {
+			breaker.onFailure(URL + i + ".jpg", new SocketException("Connection reset"));
+		}
+		assertTrue(breaker.isOpen(HOST));
+	}
+	
+	private static class FakeClockBreaker extends CircuitBreaker {
+		private long time = 1000;
+		
+		@Override
+		protected long now() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ColorMatrixKernelTest {
+	
+	private static final float[] IDENTITY = {
+			1, 0, 0, 0, 0,
+			0, 1, 0, 0, 0,
+			0, 0, 1, 0, 0,
+			0, 0, 0, 1, 0 };
+	
+	@Test
+	public void identityLeavesPixelsUnchanged() {
+		assertUnchanged(new ColorMatrixKernel(IDENTITY));
+	}
+	
+	@Test
+	public void fullSaturationLeavesPixelsUnchanged() {
+		assertUnchanged(ColorMatrixKernel.saturation(1));
+	}
+	
+	@Test
+	public void noBrightnessOrContrastChangeLeavesPixelsUnchanged() {
+		assertUnchanged(ColorMatrixKernel.brightnessContrast(0, 1));
+	}
+	
+	@Test
+	public void zeroSaturationIsGrey() {
+		int[] pixels = randomPixels(1000, 3);
+		ColorMatrixKernel.saturation(0).apply(0, pixels, pixels.length, 1);
+		for (int p : pixels) {
+			int r = (p >> 16) & 0xff, g = (p >> 8) & 0xff, b = p & 0xff;
+			// the weights add up to 1 so the channels only differ by the rounding
+			assertTrue(Math.abs(r - g) <= 1 && Math.abs(g - b) <= 1);
+		}
+	}
+	
+	@Test
+	public void fixedPointMatchesFloatMath() {
+		Random random = new Random(7);
+		for (int trial = 0; trial < 50; trial++) {
+			float[] matrix = new float[20];
+			for (int i = 0; i < 20; i++) {
+				matrix[i] = i % 5 == 4 ? random.nextFloat() * 200 - 100 : random.nextFloat() * 4 - 2;
+			}
+			int[] pixels = randomPixels(500, trial);
+			int[] expected = new int[pixels.length];
+			for (int i = 0; i < pixels.length; i++) {
+				expected[i] = reference(matrix, pixels[i]);
+			}
+			new ColorMatrixKernel(matrix).apply(0, pixels, pixels.length, 1);
+			for (int i = 0; i < pixels.length; i++) {
+				assertChannelsWithin(1, expected[i], pixels[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void largestValuesClampWithoutOverflowing() {
+		float[] up = new float[20];
+		float[] down = new float[20];
+		for (int i = 0; i < 20; i++) {
+			// past the limits, so the kernel clamps them to 8 and 2040
+			up[i] = i % 5 == 4 ? 1e6f : 100;
+			down[i] = -up[i];
+		}
+		int[] pixels = {0xFFFFFFFF, 0x00000000, 0x80808080};
+		new ColorMatrixKernel(up).apply(0, pixels, 3, 1);
+		assertArrayEquals(new int[] {0xFFFFFFFF, 0xFFFFFFFF, 0xFFFFFFFF}, pixels);
+		pixels = new int[] {0xFFFFFFFF, 0x00000000, 0x80808080};
+		new ColorMatrixKernel(down).apply(0, pixels, 3, 1);
+		assertArrayEquals(new int[] {0, 0, 0}, pixels);
+	}
+	
+	private static void assertUnchanged(ColorMatrixKernel kernel) {
+		int[] pixels = randomPixels(4096, 1);
+		// every value of every channel
+		for (int v = 0; v < 256; v++) {
+			pixels[v] = (v << 24) | (v << 16) | (v << 8) | v;
+			pixels[256 + v] = ((255 - v) << 24) | (v << 16) | ((255 - v) << 8) | v;
+		}
+		int[] before = pixels.clone();
+		kernel.apply(0, pixels, 64, 64);
+		assertArrayEquals(before, pixels);
+	}
+	
+	private static int reference(float[] m, int p) {
+		float a = p >>> 24, r = (p >> 16) & 0xff, g = (p >> 8) & 0xff, b = p & 0xff;
+		int[] out = new int[4];
+		for (int row = 0; row < 4; row++) {
+			int i = row * 5;
+			float v = m[i] * r + m[i + 1] * g + m[i + 2] * b + m[i + 3] * a + m[i + 4];
+			out[row] = Math.max(0, Math.min(255, Math.round(v)));
+		}
+		return (out[3] << 24) | (out[0] << 16) | (out[1] << 8) | out[2];
+	}
+	
+	static void assertChannelsWithin(int tolerance, int expected, int actual) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			int e = (expected >>> shift) & 0xff;
+			int a = (actual >>> shift) & 0xff;
+			if (Math.abs(e - a) > tolerance) {
+				assertEquals(Integer.toHexString(expected), Integer.toHexString(actual));
+			}
+		}
+	}
+	
+	static int[] randomPixels(int count, long seed) {
+		Random random = new Random(seed);
+		int[] pixels = new int[count];
+		for (int i = 0; i < count; i++) pixels[i] = random.nextInt();
+		return pixels;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PixelRunnerTest {
+	
+	private static final int WIDTH = 97;
+	private static final int HEIGHT = 61;
+	// a few rows or columns, so both passes cross many strip boundaries
+	private static final int STRIP_SIZE = 300;
+	
+	private ForkJoinPool pool;
+	
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+	
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+	
+	@Test
+	public void forkJoinMatchesSingleThreadForBlur() {
+		for (int radius : new int[] {1, 3, StackBlurKernel.MAX_RADIUS}) {
+			assertSameResult(new StackBlurKernel(radius));
+		}
+	}
+	
+	@Test
+	public void forkJoinMatchesSingleThreadForColorMatrix() {
+		assertSameResult(ColorMatrixKernel.saturation(0.3f));
+		assertSameResult(ColorMatrixKernel.brightnessContrast(-20, 1.4f));
+	}
+	
+	@Test
+	public void stripsMatchOneWholeImageStrip() {
+		StackBlurKernel kernel = new StackBlurKernel(5);
+		int[] whole = ColorMatrixKernelTest.randomPixels(WIDTH * HEIGHT, 11);
+		int[] strips = whole.clone();
+		new PixelRunner(WIDTH * HEIGHT).run(kernel, new IntArraySurface(whole, WIDTH, HEIGHT));
+		new PixelRunner(STRIP_SIZE).run(kernel, new IntArraySurface(strips, WIDTH, HEIGHT));
+		assertArrayEquals(whole, strips);
+	}
+	
+	@Test
+	public void everyPassFinishes() {
+		final int[] passes = new int[1];
+		int[] pixels = new int[WIDTH * HEIGHT];
+		IntArraySurface surface = new IntArraySurface(pixels, WIDTH, HEIGHT) {
+			@Override
+			public void onPassFinished() {
+				passes[0]++;
+			}
+		};
+		new ForkJoinPixelRunner(pool, STRIP_SIZE).run(new StackBlurKernel(2), surface);
+		assertEquals(2, passes[0]);
+	}
+	
+	private void assertSameResult(PixelKernel kernel) {
+		int[] serial = ColorMatrixKernelTest.randomPixels(WIDTH * HEIGHT, 5);
+		int[] forked = serial.clone();
+		new PixelRunner(STRIP_SIZE).run(kernel, new IntArraySurface(serial, WIDTH, HEIGHT));
+		new ForkJoinPixelRunner(pool, STRIP_SIZE).run(kernel, new IntArraySurface(forked, WIDTH, HEIGHT));
+		assertArrayEquals(serial, forked);
+	}
+}
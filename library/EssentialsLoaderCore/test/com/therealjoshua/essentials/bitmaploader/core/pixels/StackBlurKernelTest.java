@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012 Joshua Musselwhite
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.therealjoshua.essentials.bitmaploader.core.pixels;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class StackBlurKernelTest {
+	
+	@Test
+	public void flatColorStaysFlat() {
+		int[] colors = {0xFFFFFFFF, 0x00000000, 0xFF000000, 0x80FF7F01, 0x01020304};
+		for (int radius : new int[] {1, 2, 7, StackBlurKernel.MAX_RADIUS}) {
+			for (int color : colors) {
+				// smaller than the radius too, so the edges are clamped from both sides
+				for (int size : new int[] {1, 5, 150}) {
+					int[] pixels = new int[size * (size + 3)];
+					Arrays.fill(pixels, color);
+					new PixelRunner().run(new StackBlurKernel(radius), new IntArraySurface(pixels, size, size + 3));
+					int[] expected = new int[pixels.length];
+					Arrays.fill(expected, color);
+					assertArrayEquals("radius " + radius + " size " + size, expected, pixels);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void multiplyMatchesDivisionAtEveryRadius() {
+		int width = 37, height = 29;
+		for (int radius = 1; radius <= StackBlurKernel.MAX_RADIUS; radius++) {
+			int[] pixels = ColorMatrixKernelTest.randomPixels(width * height, radius);
+			int[] expected = referenceBlur(pixels, width, height, radius);
+			new PixelRunner().run(new StackBlurKernel(radius), new IntArraySurface(pixels, width, height));
+			assertArrayEquals("radius " + radius, expected, pixels);
+		}
+	}
+	
+	@Test
+	public void brightestPixelsAtTheLargestRadius() {
+		int width = 120, height = 3;
+		int radius = StackBlurKernel.MAX_RADIUS;
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) pixels[i] = i % 2 == 0 ? 0xFFFFFFFF : 0xFFFEFDFC;
+		int[] expected = referenceBlur(pixels, width, height, radius);
+		new PixelRunner().run(new StackBlurKernel(radius), new IntArraySurface(pixels, width, height));
+		assertArrayEquals(expected, pixels);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void radiusPastTheLimit() {
+		new StackBlurKernel(StackBlurKernel.MAX_RADIUS + 1);
+	}
+	
+	/*
+	 * The triangle weights of the stack blur, summed and divided plainly, over the 
+	 * rows and then the columns with the edge pixels repeated
+	 */
+	private static int[] referenceBlur(int[] pixels, int width, int height, int radius) {
+		int[] rows = new int[pixels.length];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				rows[y * width + x] = blurAt(pixels, y * width, 1, width, x, radius);
+			}
+		}
+		int[] out = new int[pixels.length];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				out[y * width + x] = blurAt(rows, x, width, height, y, radius);
+			}
+		}
+		return out;
+	}
+	
+	private static int blurAt(int[] pixels, int start, int stride, int length, int at, int radius) {
+		long weights = (long)(radius + 1) * (radius + 1);
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			long sum = 0;
+			for (int i = -radius; i <= radius; i++) {
+				int index = Math.max(0, Math.min(length - 1, at + i));
+				int c = (pixels[start + index * stride] >>> shift) & 0xff;
+				sum += c * (radius + 1 - Math.abs(i));
+			}
+			result |= (int)(sum / weights) << shift;
+		}
+		return result;
+	}
+}